@@ -58,8 +58,16 @@ public final class Constants {
     public final static String FLASH_SCREEN = "flash_screen";
     public final static String KEEP_AWAKE = "keep_awake";
     public final static String SOUND = "sound";
-    public final static String LATENCY = "latency_offset";
+    // stored per tick type, see SoundBank.getSynthPref
+    public final static String SYNTH_PITCH = "synth_pitch";
+    public final static String SYNTH_DECAY = "synth_decay";
+    public final static String SYNTH_BRIGHTNESS = "synth_brightness";
+    public final static String TICK_LEVEL = "tick_level";
+    public final static String LATENCY = "latency_trim";
     public final static String IGNORE_FOCUS = "ignore_focus";
+    public final static String LOW_LATENCY = "low_latency";
+    public final static String SUSTAINED_PERFORMANCE = "sustained_performance";
+    public final static String BUFFER_SIZE = "buffer_size";
     public final static String GAIN = "gain";
     public final static String BOOKMARKS = "bookmarks";
     public final static String BIG_LOGO = "big_logo";
@@ -83,7 +91,7 @@ public final class Constants {
     public static final boolean REDUCE_ANIM = false;
 
     // Metronome
-    public final static int TEMPO = 120;
+    public final static float TEMPO = 120;
     public final static String BEATS = String.join(
         ",", TICK_TYPE.STRONG, TICK_TYPE.NORMAL, TICK_TYPE.NORMAL, TICK_TYPE.NORMAL
     );
@@ -99,8 +107,14 @@ public final class Constants {
     public final static boolean FLASH_SCREEN = false;
     public final static boolean KEEP_AWAKE = true;
     public final static String SOUND = Constants.SOUND.SINE;
-    public final static long LATENCY = 100;
+    public final static int SYNTH_PITCH = 0; // in semitones
+    public final static int SYNTH_DECAY = 80; // in milliseconds
+    public final static int SYNTH_BRIGHTNESS = 50; // in percent
+    public final static int TICK_LEVEL = 0; // in dB
+    public final static long LATENCY = 0;
     public final static boolean IGNORE_FOCUS = false;
+    public final static boolean LOW_LATENCY = false;
+    public final static boolean SUSTAINED_PERFORMANCE = false;
     public final static int GAIN = 0;
     public final static boolean BIG_LOGO = false;
 
@@ -123,6 +137,10 @@ public final class Constants {
     public final static String BEATBOXING_2 = "beatboxing_2";
     public final static String HANDS = "hands";
     public final static String FOLDING = "folding";
+    public final static String SYNTH_SINE = "synth_sine";
+    public final static String SYNTH_WOOD = "synth_wood";
+    public final static String SYNTH_BELL = "synth_bell";
+    public final static String CUSTOM = "custom";
   }
 
   public final static class TICK_TYPE {
@@ -27,9 +27,11 @@ import android.content.res.ColorStateList;
 import android.graphics.Color;
 import android.graphics.drawable.Animatable;
 import android.graphics.drawable.Drawable;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.Message;
 import android.util.Log;
 import android.util.TypedValue;
 import android.view.Gravity;
@@ -45,6 +47,8 @@ import android.view.animation.LinearInterpolator;
 import android.widget.SeekBar;
 import android.widget.SeekBar.OnSeekBarChangeListener;
 import android.widget.TextView;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts.CreateDocument;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.OptIn;
@@ -72,13 +76,16 @@ import xyz.zedler.patrick.tack.R;
 import xyz.zedler.patrick.tack.activity.MainActivity;
 import xyz.zedler.patrick.tack.behavior.ScrollBehavior;
 import xyz.zedler.patrick.tack.behavior.SystemBarBehavior;
+import xyz.zedler.patrick.tack.core.Tick;
+import xyz.zedler.patrick.tack.core.TickType;
 import xyz.zedler.patrick.tack.databinding.FragmentMainBinding;
 import xyz.zedler.patrick.tack.drawable.BeatsBgDrawable;
 import xyz.zedler.patrick.tack.drawable.SquigglyProgressDrawable;
 import xyz.zedler.patrick.tack.util.DialogUtil;
+import xyz.zedler.patrick.tack.util.ExportUtil.OnExportedListener;
 import xyz.zedler.patrick.tack.util.LogoUtil;
+import xyz.zedler.patrick.tack.util.MetronomeUtil;
 import xyz.zedler.patrick.tack.util.MetronomeUtil.MetronomeListener;
-import xyz.zedler.patrick.tack.util.MetronomeUtil.Tick;
 import xyz.zedler.patrick.tack.util.OptionsUtil;
 import xyz.zedler.patrick.tack.util.ResUtil;
 import xyz.zedler.patrick.tack.util.ShortcutUtil;
@@ -94,6 +101,9 @@ public class MainFragment extends BaseFragment
 
   private static final String TAG = MainFragment.class.getSimpleName();
 
+  private static final int MSG_PRE_TICK = 0;
+  private static final int MSG_TICK = 1;
+
   private FragmentMainBinding binding;
   private MainActivity activity;
   private Bundle savedState;
@@ -107,13 +117,27 @@ public class MainFragment extends BaseFragment
   private OptionsUtil optionsUtil;
   private ShortcutUtil shortcutUtil;
   private TempoTapUtil tempoTapUtil;
-  private List<Integer> bookmarks;
+  private List<Float> bookmarks;
   private SquigglyProgressDrawable squiggly;
   private BeatsBgDrawable beatsBgDrawable;
   private BadgeDrawable beatsCountBadge, subsCountBadge, optionsBadge;
   private ValueAnimator progressAnimator, progressTransitionAnimator;
   private ValueAnimator beatsCountBadgeAnimator, subsCountBadgeAnimator, optionsBadgeAnimator;
   private ValueAnimator pickerLogoAnimator;
+  // ticks are passed by their sequence number, so the callbacks do not allocate per tick
+  private final Handler tickHandler = new Handler(Looper.getMainLooper(), this::handleTickMessage);
+  private final Tick uiTick = new Tick();
+  private final Runnable flashReset = () -> {
+    if (binding != null) {
+      getFlashContainer().setBackgroundColor(colorFlashMuted);
+    }
+  };
+  private final ActivityResultLauncher<String> exportLauncher =
+      registerForActivityResult(new CreateDocument("audio/wav"), uri -> {
+        if (uri != null) {
+          exportClickTrack(uri);
+        }
+      });
 
   @Override
   public View onCreateView(
@@ -127,6 +151,8 @@ public class MainFragment extends BaseFragment
   public void onDestroyView() {
     super.onDestroyView();
 
+    tickHandler.removeCallbacksAndMessages(null);
+
     if (fabAnimator != null) {
       fabAnimator.pause();
       fabAnimator.removeAllUpdateListeners();
@@ -164,6 +190,11 @@ public class MainFragment extends BaseFragment
       performHapticClick();
       if (id == R.id.action_settings) {
         activity.navigateToFragment(MainFragmentDirections.actionMainToSettings());
+      } else if (id == R.id.action_export) {
+        if (!getMetronomeUtil().isExporting()) {
+          String tempo = MetronomeUtil.getTempoString(getMetronomeUtil().getTempo());
+          exportLauncher.launch(getString(R.string.msg_export_file_name, tempo));
+        }
       } else if (id == R.id.action_about) {
         activity.navigateToFragment(MainFragmentDirections.actionMainToAbout());
       } else if (id == R.id.action_help) {
@@ -476,7 +507,7 @@ public class MainFragment extends BaseFragment
     bookmarks = new ArrayList<>();
     for (String tempo : bookmarksSet) {
       try {
-        bookmarks.add(Integer.parseInt(tempo));
+        bookmarks.add(Float.parseFloat(tempo));
       } catch (NumberFormatException e) {
         Log.e(TAG, "onViewCreated: get bookmarks: ", e);
       }
@@ -593,7 +624,7 @@ public class MainFragment extends BaseFragment
     updateElapsedDisplay();
     updateOptions(false);
 
-    int tempo = getMetronomeUtil().getTempo();
+    float tempo = getMetronomeUtil().getTempo();
     setTempo(tempo);
     binding.textSwitcherMainTempoTerm.setCurrentText(getTempoTerm(tempo));
 
@@ -611,6 +642,9 @@ public class MainFragment extends BaseFragment
     UiUtil.keepScreenAwake(
         activity, getMetronomeUtil().getKeepAwake() && getMetronomeUtil().isPlaying()
     );
+    UiUtil.setSustainedPerformance(
+        activity, getMetronomeUtil().getSustainedPerformance() && getMetronomeUtil().isPlaying()
+    );
   }
 
   @Override
@@ -639,6 +673,9 @@ public class MainFragment extends BaseFragment
     });
     // Inside UI thread appears to be often not effective
     UiUtil.keepScreenAwake(activity, getMetronomeUtil().getKeepAwake());
+    activity.runOnUiThread(() -> UiUtil.setSustainedPerformance(
+        activity, getMetronomeUtil().getSustainedPerformance()
+    ));
   }
 
   @Override
@@ -666,14 +703,28 @@ public class MainFragment extends BaseFragment
     });
     // Inside UI thread appears to be often not effective
     UiUtil.keepScreenAwake(activity, false);
+    activity.runOnUiThread(() -> UiUtil.setSustainedPerformance(activity, false));
   }
 
   @Override
   public void onMetronomePreTick(Tick tick) {
-    activity.runOnUiThread(() -> {
-      if (binding == null) {
-        return;
-      }
+    tickHandler.obtainMessage(MSG_PRE_TICK, tick.sequence, 0).sendToTarget();
+  }
+
+  @Override
+  public void onMetronomeTick(Tick tick) {
+    tickHandler.obtainMessage(MSG_TICK, tick.sequence, 0).sendToTarget();
+  }
+
+  private boolean handleTickMessage(@NonNull Message msg) {
+    if (binding == null) {
+      return true;
+    }
+    Tick tick = getMetronomeUtil().getTick(msg.arg1, uiTick);
+    if (tick == null) {
+      return true; // slot has been reused while the UI thread was busy
+    }
+    if (msg.what == MSG_PRE_TICK) {
       View beat = binding.linearMainBeats.getChildAt(tick.beat - 1);
       if (beat instanceof BeatView && tick.subdivision == 1) {
         ((BeatView) beat).setTickType(tick.type);
@@ -684,53 +735,47 @@ public class MainFragment extends BaseFragment
         ((BeatView) subdivision).setTickType(tick.subdivision == 1 ? TICK_TYPE.MUTED : tick.type);
         ((BeatView) subdivision).beat();
       }
-    });
-  }
-
-  @Override
-  public void onMetronomeTick(Tick tick) {
-    activity.runOnUiThread(() -> {
-      if (binding == null) {
-        return;
+      return true;
+    }
+    if (flashScreen) {
+      int color;
+      switch (tick.typeId) {
+        case TickType.ID_STRONG:
+          color = colorFlashStrong;
+          break;
+        case TickType.ID_SUB:
+        case TickType.ID_MUTED:
+          color = colorFlashMuted;
+          break;
+        default:
+          color = colorFlashNormal;
+          break;
       }
-      if (flashScreen) {
-        int color;
-        switch (tick.type) {
-          case TICK_TYPE.STRONG:
-            color = colorFlashStrong;
-            break;
-          case TICK_TYPE.SUB:
-          case TICK_TYPE.MUTED:
-            color = colorFlashMuted;
-            break;
-          default:
-            color = colorFlashNormal;
-            break;
-        }
-        View flashContainer = isLandTablet && binding.containerMainEnd != null
-            ? binding.containerMainEnd
-            : binding.coordinatorContainer;
-        flashContainer.setBackgroundColor(color);
-        flashContainer.postDelayed(() -> {
-          if (binding != null) {
-            flashContainer.setBackgroundColor(colorFlashMuted);
-          }
-        }, 100); // flash screen for 100 milliseconds
+      View flashContainer = getFlashContainer();
+      flashContainer.setBackgroundColor(color);
+      flashContainer.removeCallbacks(flashReset);
+      flashContainer.postDelayed(flashReset, 100); // flash screen for 100 milliseconds
+    }
+    if (tick.subdivision == 1) {
+      logoUtil.nextBeat(getMetronomeUtil().getInterval());
+      if (bigLogo) {
+        logoCenterUtil.nextBeat(getMetronomeUtil().getInterval());
       }
-      if (tick.subdivision == 1) {
-        logoUtil.nextBeat(getMetronomeUtil().getInterval());
-        if (bigLogo) {
-          logoCenterUtil.nextBeat(getMetronomeUtil().getInterval());
-        }
-        if (getMetronomeUtil().getTimerUnit().equals(UNIT.BARS)) {
-          updateTimerDisplay();
-        }
+      if (getMetronomeUtil().getTimerUnit().equals(UNIT.BARS)) {
+        updateTimerDisplay();
       }
-    });
+    }
+    return true;
+  }
+
+  private View getFlashContainer() {
+    return isLandTablet && binding.containerMainEnd != null
+        ? binding.containerMainEnd
+        : binding.coordinatorContainer;
   }
 
   @Override
-  public void onMetronomeTempoChanged(int tempoOld, int tempoNew) {
+  public void onMetronomeTempoChanged(float tempoOld, float tempoNew) {
     activity.runOnUiThread(() -> setTempo(tempoOld, tempoNew));
   }
 
@@ -917,7 +962,7 @@ public class MainFragment extends BaseFragment
     } else if (id == R.id.button_main_bookmark) {
       ViewUtil.startIcon(binding.buttonMainBookmark.getIcon());
       performHapticClick();
-      int tempo = getMetronomeUtil().getTempo();
+      float tempo = getMetronomeUtil().getTempo();
       if (bookmarks.size() < Constants.BOOKMARKS_MAX && !bookmarks.contains(tempo)) {
         int position = 0;
         while (position < bookmarks.size() && bookmarks.get(position) < tempo) {
@@ -1293,7 +1338,7 @@ public class MainFragment extends BaseFragment
     }
   }
 
-  private Chip getBookmarkChip(int tempo) {
+  private Chip getBookmarkChip(float tempo) {
     Chip chip = new Chip(activity);
     chip.setCheckable(false);
     chip.setChipIconResource(R.drawable.ic_rounded_music_note_anim);
@@ -1302,7 +1347,7 @@ public class MainFragment extends BaseFragment
     chip.setOnCloseIconClickListener(v -> {
       performHapticClick();
       binding.chipGroupMainBookmarks.removeView(chip);
-      bookmarks.remove((Integer) tempo); // Integer cast required, else it would take int as index
+      bookmarks.remove((Float) tempo);
       shortcutUtil.removeShortcut(tempo);
       updateBookmarks();
       refreshBookmarks(false, true);
@@ -1313,7 +1358,7 @@ public class MainFragment extends BaseFragment
       }, 300);
     });
     chip.setStateListAnimator(null);
-    chip.setText(getString(R.string.label_bpm_value, tempo));
+    chip.setText(getString(R.string.label_bpm_value, MetronomeUtil.getTempoString(tempo)));
     chip.setTag(tempo);
     chip.setTextAppearance(R.style.TextAppearance_Tack_LabelLarge);
     chip.setOnClickListener(v -> {
@@ -1326,8 +1371,8 @@ public class MainFragment extends BaseFragment
 
   private void updateBookmarks() {
     Set<String> bookmarksSet = new HashSet<>();
-    for (Integer tempo : bookmarks) {
-      bookmarksSet.add(String.valueOf(tempo));
+    for (Float tempo : bookmarks) {
+      bookmarksSet.add(MetronomeUtil.getTempoString(tempo));
     }
     getSharedPrefs().edit().putStringSet(PREF.BOOKMARKS, bookmarksSet).apply();
   }
@@ -1343,7 +1388,7 @@ public class MainFragment extends BaseFragment
         continue;
       }
       Object tag = chip.getTag();
-      boolean isActive = tag != null && ((int) tag) == getMetronomeUtil().getTempo();
+      boolean isActive = tag != null && ((float) tag) == getMetronomeUtil().getTempo();
       int colorBg = isActive
           ? ResUtil.getColor(activity, R.attr.colorTertiaryContainer)
           : Color.TRANSPARENT;
@@ -1390,25 +1435,40 @@ public class MainFragment extends BaseFragment
     }
   }
 
+  private void exportClickTrack(@NonNull Uri uri) {
+    activity.showSnackbar(R.string.msg_export_running);
+    getMetronomeUtil().exportClickTrack(uri, new OnExportedListener() {
+      @Override
+      public void onExported() {
+        activity.showSnackbar(R.string.msg_export_success);
+      }
+
+      @Override
+      public void onExportFailed() {
+        activity.showSnackbar(R.string.msg_export_failed);
+      }
+    });
+  }
+
   private void changeTempo(int difference) {
-    int tempoNew = getMetronomeUtil().getTempo() + difference;
+    float tempoNew = getMetronomeUtil().getTempo() + difference;
     setTempo(tempoNew);
     if (tempoNew >= Constants.TEMPO_MIN && tempoNew <= Constants.TEMPO_MAX) {
       performHapticTick();
     }
   }
 
-  public void setTempo(int tempo) {
+  public void setTempo(float tempo) {
     setTempo(getMetronomeUtil().getTempo(), tempo);
   }
 
-  private void setTempo(int tempoOld, int tempoNew) {
+  private void setTempo(float tempoOld, float tempoNew) {
     tempoNew = Math.min(Math.max(tempoNew, Constants.TEMPO_MIN), Constants.TEMPO_MAX);
     getMetronomeUtil().setTempo(tempoNew);
     if (binding == null) {
       return;
     }
-    binding.textMainTempo.setText(String.valueOf(tempoNew));
+    binding.textMainTempo.setText(MetronomeUtil.getTempoString(tempoNew));
     String termNew = getTempoTerm(tempoNew);
     if (!termNew.equals(getTempoTerm(tempoOld))) {
       boolean isFaster = tempoNew > tempoOld;
@@ -1425,7 +1485,7 @@ public class MainFragment extends BaseFragment
   }
 
   private void setButtonStates() {
-    int tempo = getMetronomeUtil().getTempo();
+    float tempo = getMetronomeUtil().getTempo();
     binding.buttonMainLess.setEnabled(tempo > 1);
     binding.buttonMainMore.setEnabled(tempo < Constants.TEMPO_MAX);
   }
@@ -1566,7 +1626,7 @@ public class MainFragment extends BaseFragment
     snackbar.show();
   }
 
-  public String getTempoTerm(int tempo) {
+  public String getTempoTerm(float tempo) {
     int resId;
     if (tempo < 60) {
       resId = R.string.label_tempo_largo;
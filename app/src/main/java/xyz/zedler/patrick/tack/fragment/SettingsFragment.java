@@ -19,7 +19,10 @@
 
 package xyz.zedler.patrick.tack.fragment;
 
+import android.Manifest;
+import android.content.pm.PackageManager;
 import android.graphics.drawable.Drawable;
+import android.net.Uri;
 import android.os.Build.VERSION;
 import android.os.Build.VERSION_CODES;
 import android.os.Bundle;
@@ -31,16 +34,21 @@ import android.view.ViewGroup;
 import android.widget.CompoundButton;
 import android.widget.CompoundButton.OnCheckedChangeListener;
 import android.widget.LinearLayout;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts.OpenDocument;
+import androidx.activity.result.contract.ActivityResultContracts.RequestPermission;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.StyleRes;
 import androidx.appcompat.app.AppCompatDelegate;
 import androidx.appcompat.view.ContextThemeWrapper;
+import androidx.core.content.ContextCompat;
 import com.google.android.material.color.DynamicColors;
 import com.google.android.material.divider.MaterialDivider;
 import com.google.android.material.slider.Slider;
 import com.google.android.material.slider.Slider.OnChangeListener;
 import com.google.android.material.slider.Slider.OnSliderTouchListener;
+import com.google.android.material.snackbar.Snackbar;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -50,18 +58,22 @@ import xyz.zedler.patrick.tack.Constants.EXTRA;
 import xyz.zedler.patrick.tack.Constants.PREF;
 import xyz.zedler.patrick.tack.Constants.SOUND;
 import xyz.zedler.patrick.tack.Constants.THEME;
+import xyz.zedler.patrick.tack.Constants.TICK_TYPE;
 import xyz.zedler.patrick.tack.R;
 import xyz.zedler.patrick.tack.activity.MainActivity;
 import xyz.zedler.patrick.tack.behavior.ScrollBehavior;
 import xyz.zedler.patrick.tack.behavior.SystemBarBehavior;
+import xyz.zedler.patrick.tack.core.Tick;
 import xyz.zedler.patrick.tack.databinding.FragmentSettingsBinding;
+import xyz.zedler.patrick.tack.util.CalibrationUtil.OnCalibratedListener;
+import xyz.zedler.patrick.tack.util.CustomSoundUtil.OnImportedListener;
 import xyz.zedler.patrick.tack.util.DialogUtil;
 import xyz.zedler.patrick.tack.util.HapticUtil;
 import xyz.zedler.patrick.tack.util.LocaleUtil;
 import xyz.zedler.patrick.tack.util.MetronomeUtil.MetronomeListener;
 import xyz.zedler.patrick.tack.util.MetronomeUtil.MetronomeListenerAdapter;
-import xyz.zedler.patrick.tack.util.MetronomeUtil.Tick;
 import xyz.zedler.patrick.tack.util.ShortcutUtil;
+import xyz.zedler.patrick.tack.util.SoundBank;
 import xyz.zedler.patrick.tack.util.UiUtil;
 import xyz.zedler.patrick.tack.util.ViewUtil;
 import xyz.zedler.patrick.tack.view.ThemeSelectionCardView;
@@ -70,6 +82,7 @@ public class SettingsFragment extends BaseFragment
     implements OnClickListener, OnCheckedChangeListener, OnChangeListener {
 
   private static final String TAG = SettingsFragment.class.getSimpleName();
+  private static final String STATE_CUSTOM_TICK_TYPE = "custom_tick_type";
 
   private FragmentSettingsBinding binding;
   private MainActivity activity;
@@ -77,6 +90,23 @@ public class SettingsFragment extends BaseFragment
   private DialogUtil dialogUtilReset, dialogUtilSound;
   private Drawable itemBgFlash;
   private boolean flashScreen;
+  private String synthTickType = TICK_TYPE.NORMAL;
+  private String customTickType = TICK_TYPE.NORMAL;
+  private String levelTickType = TICK_TYPE.NORMAL;
+  private final ActivityResultLauncher<String> requestPermissionLauncher =
+      registerForActivityResult(new RequestPermission(), isGranted -> {
+        if (isGranted) {
+          startLatencyCalibration();
+        } else {
+          activity.showSnackbar(R.string.msg_microphone_permission_denied);
+        }
+      });
+  private final ActivityResultLauncher<String[]> importLauncher =
+      registerForActivityResult(new OpenDocument(), uri -> {
+        if (uri != null) {
+          importCustomSound(uri);
+        }
+      });
 
   @Override
   public View onCreateView(
@@ -97,6 +127,10 @@ public class SettingsFragment extends BaseFragment
   @Override
   public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
     savedState = savedInstanceState;
+    if (savedInstanceState != null) {
+      // the document picker may outlive this instance
+      customTickType = savedInstanceState.getString(STATE_CUSTOM_TICK_TYPE, customTickType);
+    }
     activity = (MainActivity) requireActivity();
 
     SystemBarBehavior systemBarBehavior = new SystemBarBehavior(activity);
@@ -308,6 +342,49 @@ public class SettingsFragment extends BaseFragment
         value -> getString(R.string.label_db, (int) value)
     );
 
+    binding.toggleSettingsTickLevel.check(R.id.button_settings_tick_level_normal);
+    binding.toggleSettingsTickLevel.addOnButtonCheckedListener((group, checkedId, isChecked) -> {
+      if (!isChecked) {
+        return;
+      }
+      if (checkedId == R.id.button_settings_tick_level_strong) {
+        levelTickType = TICK_TYPE.STRONG;
+      } else if (checkedId == R.id.button_settings_tick_level_sub) {
+        levelTickType = TICK_TYPE.SUB;
+      } else {
+        levelTickType = TICK_TYPE.NORMAL;
+      }
+      performHapticClick();
+      updateTickLevelSettings();
+    });
+    binding.sliderSettingsTickLevel.setLabelFormatter(
+        value -> getString(R.string.label_db_level, (int) value)
+    );
+
+    binding.toggleSettingsSynth.check(R.id.button_settings_synth_normal);
+    binding.toggleSettingsSynth.addOnButtonCheckedListener((group, checkedId, isChecked) -> {
+      if (!isChecked) {
+        return;
+      }
+      if (checkedId == R.id.button_settings_synth_strong) {
+        synthTickType = TICK_TYPE.STRONG;
+      } else if (checkedId == R.id.button_settings_synth_sub) {
+        synthTickType = TICK_TYPE.SUB;
+      } else {
+        synthTickType = TICK_TYPE.NORMAL;
+      }
+      performHapticClick();
+      updateSynthSettings();
+    });
+    binding.sliderSettingsSynthPitch.setLabelFormatter(
+        value -> String.format(activity.getLocale(), "%+.0f", value)
+    );
+    binding.sliderSettingsSynthDecay.setLabelFormatter(
+        value -> getString(
+            R.string.label_ms, String.format(activity.getLocale(), "%.0f", value)
+        )
+    );
+
     binding.linearSettingsAlwaysVibrate.setVisibility(
         activity.getHapticUtil().hasVibrator() ? View.VISIBLE : View.GONE
     );
@@ -321,7 +398,13 @@ public class SettingsFragment extends BaseFragment
         binding.linearSettingsReduceAnimations,
         binding.linearSettingsReset,
         binding.linearSettingsSound,
+        binding.linearSettingsCustomStrong,
+        binding.linearSettingsCustomNormal,
+        binding.linearSettingsCustomSub,
         binding.linearSettingsIgnoreFocus,
+        binding.linearSettingsCalibration,
+        binding.linearSettingsLowLatency,
+        binding.linearSettingsSustainedPerformance,
         binding.linearSettingsShowSubs,
         binding.linearSettingsAlwaysVibrate,
         binding.linearSettingsElapsed,
@@ -340,6 +423,8 @@ public class SettingsFragment extends BaseFragment
         binding.switchSettingsHaptic,
         binding.switchSettingsReduceAnimations,
         binding.switchSettingsIgnoreFocus,
+        binding.switchSettingsLowLatency,
+        binding.switchSettingsSustainedPerformance,
         binding.switchSettingsShowSubs,
         binding.switchSettingsAlwaysVibrate,
         binding.switchSettingsElapsed,
@@ -356,6 +441,7 @@ public class SettingsFragment extends BaseFragment
   @Override
   public void onSaveInstanceState(@NonNull Bundle outState) {
     super.onSaveInstanceState(outState);
+    outState.putString(STATE_CUSTOM_TICK_TYPE, customTickType);
     if (dialogUtilReset != null) {
       dialogUtilReset.saveState(outState);
     }
@@ -373,6 +459,10 @@ public class SettingsFragment extends BaseFragment
     labels.put(SOUND.BEATBOXING_2, getString(R.string.settings_sound_beatboxing_2));
     labels.put(SOUND.HANDS, getString(R.string.settings_sound_hands));
     labels.put(SOUND.FOLDING, getString(R.string.settings_sound_folding));
+    labels.put(SOUND.SYNTH_SINE, getString(R.string.settings_sound_synth_sine));
+    labels.put(SOUND.SYNTH_WOOD, getString(R.string.settings_sound_synth_wood));
+    labels.put(SOUND.SYNTH_BELL, getString(R.string.settings_sound_synth_bell));
+    labels.put(SOUND.CUSTOM, getString(R.string.settings_sound_custom));
     ArrayList<String> sounds = new ArrayList<>(labels.keySet());
     String[] items = labels.values().toArray(new String[]{});
     int init = sounds.indexOf(getMetronomeUtil().getSound());
@@ -386,8 +476,12 @@ public class SettingsFragment extends BaseFragment
           performHapticClick();
           getMetronomeUtil().setSound(sounds.get(which));
           binding.textSettingsSound.setText(items[which]);
+          updateSynthSettings();
+          updateCustomSettings();
         });
     dialogUtilSound.showIfWasShown(savedState);
+    updateSynthSettings();
+    updateCustomSettings();
 
     binding.sliderSettingsLatency.removeOnChangeListener(this);
     binding.sliderSettingsLatency.setValue(getMetronomeUtil().getLatency());
@@ -398,10 +492,24 @@ public class SettingsFragment extends BaseFragment
     binding.switchSettingsIgnoreFocus.jumpDrawablesToCurrentState();
     binding.switchSettingsIgnoreFocus.setOnCheckedChangeListener(this);
 
+    binding.switchSettingsLowLatency.setOnCheckedChangeListener(null);
+    binding.switchSettingsLowLatency.setChecked(getMetronomeUtil().getLowLatency());
+    binding.switchSettingsLowLatency.jumpDrawablesToCurrentState();
+    binding.switchSettingsLowLatency.setOnCheckedChangeListener(this);
+
+    binding.switchSettingsSustainedPerformance.setOnCheckedChangeListener(null);
+    binding.switchSettingsSustainedPerformance.setChecked(
+        getMetronomeUtil().getSustainedPerformance()
+    );
+    binding.switchSettingsSustainedPerformance.jumpDrawablesToCurrentState();
+    binding.switchSettingsSustainedPerformance.setOnCheckedChangeListener(this);
+
     binding.sliderSettingsGain.removeOnChangeListener(this);
     binding.sliderSettingsGain.setValue(getMetronomeUtil().getGain());
     binding.sliderSettingsGain.addOnChangeListener(this);
 
+    updateTickLevelSettings();
+
     binding.switchSettingsShowSubs.setOnCheckedChangeListener(null);
     binding.switchSettingsShowSubs.setChecked(getMetronomeUtil().getSubdivisionsUsed());
     binding.switchSettingsShowSubs.jumpDrawablesToCurrentState();
@@ -459,8 +567,33 @@ public class SettingsFragment extends BaseFragment
       ViewUtil.startIcon(binding.imageSettingsSound);
       performHapticClick();
       dialogUtilSound.show();
+    } else if (id == R.id.linear_settings_custom_strong && getViewUtil().isClickEnabled(id)) {
+      performHapticClick();
+      customTickType = TICK_TYPE.STRONG;
+      importLauncher.launch(new String[]{"audio/*"});
+    } else if (id == R.id.linear_settings_custom_normal && getViewUtil().isClickEnabled(id)) {
+      performHapticClick();
+      customTickType = TICK_TYPE.NORMAL;
+      importLauncher.launch(new String[]{"audio/*"});
+    } else if (id == R.id.linear_settings_custom_sub && getViewUtil().isClickEnabled(id)) {
+      performHapticClick();
+      customTickType = TICK_TYPE.SUB;
+      importLauncher.launch(new String[]{"audio/*"});
+    } else if (id == R.id.linear_settings_calibration && getViewUtil().isClickEnabled(id)) {
+      performHapticClick();
+      ViewUtil.startIcon(binding.imageSettingsCalibration);
+      int status = ContextCompat.checkSelfPermission(activity, Manifest.permission.RECORD_AUDIO);
+      if (status == PackageManager.PERMISSION_GRANTED) {
+        startLatencyCalibration();
+      } else {
+        requestPermissionLauncher.launch(Manifest.permission.RECORD_AUDIO);
+      }
     } else if (id == R.id.linear_settings_ignore_focus) {
       binding.switchSettingsIgnoreFocus.toggle();
+    } else if (id == R.id.linear_settings_low_latency) {
+      binding.switchSettingsLowLatency.toggle();
+    } else if (id == R.id.linear_settings_sustained_performance) {
+      binding.switchSettingsSustainedPerformance.toggle();
     } else if (id == R.id.linear_settings_show_subs) {
       binding.switchSettingsShowSubs.toggle();
     } else if (id == R.id.linear_settings_always_vibrate) {
@@ -484,6 +617,97 @@ public class SettingsFragment extends BaseFragment
     }
   }
 
+  /**
+   * Shows which tick types use an imported file if the custom sound is selected.
+   */
+  private void updateCustomSettings() {
+    boolean isCustom = getMetronomeUtil().getSound().equals(SOUND.CUSTOM);
+    binding.linearSettingsCustom.setVisibility(isCustom ? View.VISIBLE : View.GONE);
+    binding.textSettingsCustomStrong.setText(getCustomDescription(TICK_TYPE.STRONG));
+    binding.textSettingsCustomNormal.setText(getCustomDescription(TICK_TYPE.NORMAL));
+    binding.textSettingsCustomSub.setText(getCustomDescription(TICK_TYPE.SUB));
+  }
+
+  private int getCustomDescription(String tickType) {
+    return getMetronomeUtil().hasCustomSound(tickType)
+        ? R.string.settings_custom_imported
+        : R.string.settings_custom_default;
+  }
+
+  private void importCustomSound(Uri uri) {
+    getMetronomeUtil().importCustomSound(uri, customTickType, new OnImportedListener() {
+      @Override
+      public void onImported() {
+        if (binding != null) {
+          updateCustomSettings();
+        }
+        activity.showSnackbar(R.string.msg_import_success);
+      }
+
+      @Override
+      public void onImportFailed() {
+        activity.showSnackbar(R.string.msg_import_failed);
+      }
+    });
+  }
+
+  /**
+   * Shows the parameters of the selected tick type if the sound is synthesized.
+   */
+  private void updateSynthSettings() {
+    boolean isSynthesized = SoundBank.isSynthesized(getMetronomeUtil().getSound());
+    binding.linearSettingsSynth.setVisibility(isSynthesized ? View.VISIBLE : View.GONE);
+
+    binding.sliderSettingsSynthPitch.removeOnChangeListener(this);
+    binding.sliderSettingsSynthPitch.setValue(getMetronomeUtil().getSynthPitch(synthTickType));
+    binding.sliderSettingsSynthPitch.addOnChangeListener(this);
+
+    binding.sliderSettingsSynthDecay.removeOnChangeListener(this);
+    binding.sliderSettingsSynthDecay.setValue(getMetronomeUtil().getSynthDecay(synthTickType));
+    binding.sliderSettingsSynthDecay.addOnChangeListener(this);
+
+    binding.sliderSettingsSynthBrightness.removeOnChangeListener(this);
+    binding.sliderSettingsSynthBrightness.setValue(
+        getMetronomeUtil().getSynthBrightness(synthTickType)
+    );
+    binding.sliderSettingsSynthBrightness.addOnChangeListener(this);
+  }
+
+  private void updateTickLevelSettings() {
+    binding.sliderSettingsTickLevel.removeOnChangeListener(this);
+    binding.sliderSettingsTickLevel.setValue(getMetronomeUtil().getTickLevel(levelTickType));
+    binding.sliderSettingsTickLevel.addOnChangeListener(this);
+  }
+
+  private void startLatencyCalibration() {
+    if (getMetronomeUtil().isCalibratingLatency()) {
+      return;
+    }
+    activity.showSnackbar(R.string.msg_calibration_running);
+    getMetronomeUtil().startLatencyCalibration(new OnCalibratedListener() {
+      @Override
+      public void onCalibrated(long latency) {
+        if (binding != null) {
+          binding.sliderSettingsLatency.removeOnChangeListener(SettingsFragment.this);
+          binding.sliderSettingsLatency.setValue(latency);
+          binding.sliderSettingsLatency.addOnChangeListener(SettingsFragment.this);
+        }
+        String text = getString(
+            R.string.msg_calibration_success, String.format(activity.getLocale(), "%d", latency)
+        );
+        Snackbar snackbar = activity.getSnackbar(
+            R.string.msg_calibration_success, Snackbar.LENGTH_LONG
+        );
+        activity.showSnackbar(snackbar.setText(text));
+      }
+
+      @Override
+      public void onCalibrationFailed() {
+        activity.showSnackbar(R.string.msg_calibration_failed);
+      }
+    });
+  }
+
   @Override
   public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
     int id = buttonView.getId();
@@ -503,6 +727,14 @@ public class SettingsFragment extends BaseFragment
       performHapticClick();
       ViewUtil.startIcon(binding.imageSettingsIgnoreFocus);
       getMetronomeUtil().setIgnoreFocus(isChecked);
+    } else if (id == R.id.switch_settings_low_latency) {
+      performHapticClick();
+      ViewUtil.startIcon(binding.imageSettingsLowLatency);
+      getMetronomeUtil().setLowLatency(isChecked);
+    } else if (id == R.id.switch_settings_sustained_performance) {
+      performHapticClick();
+      ViewUtil.startIcon(binding.imageSettingsSustainedPerformance);
+      getMetronomeUtil().setSustainedPerformance(isChecked);
     } else if (id == R.id.switch_settings_show_subs) {
       performHapticClick();
       ViewUtil.startIcon(binding.imageSettingsShowSubs);
@@ -560,6 +792,19 @@ public class SettingsFragment extends BaseFragment
       getMetronomeUtil().setGain((int) value);
       ViewUtil.startIcon(binding.imageSettingsGain);
       performHapticSegmentTick(slider, false);
+    } else if (id == R.id.slider_settings_tick_level) {
+      getMetronomeUtil().setTickLevel(levelTickType, (int) value);
+      ViewUtil.startIcon(binding.imageSettingsTickLevel);
+      performHapticSegmentTick(slider, false);
+    } else if (id == R.id.slider_settings_synth_pitch) {
+      getMetronomeUtil().setSynthPitch(synthTickType, (int) value);
+      performHapticSegmentTick(slider, false);
+    } else if (id == R.id.slider_settings_synth_decay) {
+      getMetronomeUtil().setSynthDecay(synthTickType, (int) value);
+      performHapticSegmentTick(slider, false);
+    } else if (id == R.id.slider_settings_synth_brightness) {
+      getMetronomeUtil().setSynthBrightness(synthTickType, (int) value);
+      performHapticSegmentTick(slider, false);
     }
   }
 
@@ -33,6 +33,7 @@ import android.util.Log;
 import androidx.annotation.Nullable;
 import xyz.zedler.patrick.tack.Constants.ACTION;
 import xyz.zedler.patrick.tack.Constants.EXTRA;
+import xyz.zedler.patrick.tack.core.TimingMonitor.Stats;
 import xyz.zedler.patrick.tack.util.MetronomeUtil;
 import xyz.zedler.patrick.tack.util.NotificationUtil;
 
@@ -67,7 +68,11 @@ public class MetronomeService extends Service {
   public int onStartCommand(Intent intent, int flags, int startId) {
     if (intent != null && intent.getAction() != null) {
       if (intent.getAction().equals(ACTION.START)) {
-        metronomeUtil.setTempo(intent.getIntExtra(EXTRA.TEMPO, metronomeUtil.getTempo()));
+        // shortcuts created before fractional tempo support still contain an int extra
+        Object tempo = intent.getExtras() != null ? intent.getExtras().get(EXTRA.TEMPO) : null;
+        if (tempo instanceof Number) {
+          metronomeUtil.setTempo(((Number) tempo).floatValue());
+        }
         metronomeUtil.start();
       } else if (intent.getAction().equals(ACTION.STOP)) {
         metronomeUtil.stop();
@@ -81,6 +86,7 @@ public class MetronomeService extends Service {
   @Override
   public IBinder onBind(Intent intent) {
     stopForeground();
+    metronomeUtil.warmUpAudio();
     return binder;
   }
 
@@ -89,6 +95,7 @@ public class MetronomeService extends Service {
     super.onRebind(intent);
 
     stopForeground();
+    metronomeUtil.warmUpAudio();
   }
 
   @Override
@@ -100,6 +107,16 @@ public class MetronomeService extends Service {
     return true;
   }
 
+  @Override
+  public void onTrimMemory(int level) {
+    super.onTrimMemory(level);
+
+    // hiding the UI alone is no reason to give up the prepared audio output
+    if (level >= TRIM_MEMORY_RUNNING_LOW && level != TRIM_MEMORY_UI_HIDDEN) {
+      metronomeUtil.releaseIdleAudio();
+    }
+  }
+
   @Override
   public void onConfigurationChanged(Configuration newConfig) {
     super.onConfigurationChanged(newConfig);
@@ -139,6 +156,10 @@ public class MetronomeService extends Service {
     return metronomeUtil;
   }
 
+  public Stats getTimingStats() {
+    return metronomeUtil.getTimingStats();
+  }
+
   public class MetronomeBinder extends Binder {
 
     public MetronomeService getService() {
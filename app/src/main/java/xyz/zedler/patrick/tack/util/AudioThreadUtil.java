@@ -0,0 +1,164 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.util;
+
+import android.content.Context;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.PerformanceHintManager;
+import android.os.Process;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+import java.util.Locale;
+
+/**
+ * Thread the audio is rendered and written on. It runs with the priority of urgent audio and
+ * reports the duration of every fill as performance hint, so the system raises the clock speed
+ * before the next click is at risk. Fills which take longer than the audio buffered when they
+ * started are counted as missed deadlines.
+ */
+public class AudioThreadUtil {
+
+  private static final String TAG = AudioThreadUtil.class.getSimpleName();
+
+  private final Context context;
+  private final String name;
+  private HandlerThread thread;
+  private Handler handler;
+  // created on first use, its class does not exist on older versions
+  private PerformanceHintManager.Session hintSession;
+  private boolean hintSupported = true;
+  private long workStart, targetDuration;
+  private volatile int workCount, missedCount;
+
+  public AudioThreadUtil(@NonNull Context context, @NonNull String name) {
+    this.context = context;
+    this.name = name;
+  }
+
+  public boolean isAlive() {
+    return thread != null && thread.isAlive();
+  }
+
+  /**
+   * Starts the thread if it is not running yet and returns its handler.
+   */
+  public Handler start() {
+    if (!isAlive()) {
+      thread = new HandlerThread(name);
+      thread.start();
+      handler = new Handler(thread.getLooper());
+      handler.post(this::raisePriority);
+    }
+    return handler;
+  }
+
+  public Handler getHandler() {
+    return handler;
+  }
+
+  public void quit() {
+    if (isAlive()) {
+      handler.post(this::closeHintSession);
+      thread.quitSafely();
+    }
+  }
+
+  /**
+   * Has to be called on the thread before the audio is rendered.
+   */
+  public void onWorkStarted() {
+    workStart = System.nanoTime();
+  }
+
+  /**
+   * Has to be called on the thread after the audio has been written. The deadline is the time
+   * the audio buffered at the start of the work has lasted, the target is the duration the work
+   * should take to leave enough margin for scheduling, both in nanoseconds.
+   */
+  public void onWorkFinished(long deadline, long target) {
+    long duration = System.nanoTime() - workStart;
+    workCount++;
+    if (duration >= deadline) {
+      missedCount++;
+    }
+    if (VERSION.SDK_INT >= VERSION_CODES.S) {
+      reportWorkDuration(duration, target);
+    }
+  }
+
+  public void resetStats() {
+    workCount = 0;
+    missedCount = 0;
+  }
+
+  public int getMissedCount() {
+    return missedCount;
+  }
+
+  public String getStats() {
+    return String.format(
+        Locale.ENGLISH, "Stats{fills=%d, missed deadlines=%d}", workCount, missedCount
+    );
+  }
+
+  private void raisePriority() {
+    try {
+      Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+    } catch (IllegalArgumentException | SecurityException e) {
+      Log.e(TAG, "raisePriority: urgent audio priority not permitted", e);
+      try {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+      } catch (IllegalArgumentException | SecurityException ignored) {
+      }
+    }
+  }
+
+  @RequiresApi(api = VERSION_CODES.S)
+  private void reportWorkDuration(long duration, long target) {
+    if (hintSession == null && hintSupported) {
+      PerformanceHintManager manager = context.getSystemService(PerformanceHintManager.class);
+      if (manager != null) {
+        hintSession = manager.createHintSession(new int[]{Process.myTid()}, target);
+        targetDuration = target;
+      }
+      // null if the device does not support performance hints
+      hintSupported = hintSession != null;
+    }
+    if (hintSession == null) {
+      return;
+    }
+    if (target != targetDuration) {
+      hintSession.updateTargetWorkDuration(target);
+      targetDuration = target;
+    }
+    hintSession.reportActualWorkDuration(Math.max(1, duration));
+  }
+
+  private void closeHintSession() {
+    if (hintSession != null && VERSION.SDK_INT >= VERSION_CODES.TIRAMISU) {
+      hintSession.close();
+    }
+    hintSession = null;
+  }
+}
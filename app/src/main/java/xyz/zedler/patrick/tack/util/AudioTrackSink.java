@@ -0,0 +1,278 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.util;
+
+import android.media.AudioAttributes;
+import android.media.AudioDeviceInfo;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTimestamp;
+import android.media.AudioTrack;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import xyz.zedler.patrick.tack.core.AudioEngine;
+import xyz.zedler.patrick.tack.core.AudioSink;
+import xyz.zedler.patrick.tack.core.TimingMonitor;
+
+/**
+ * Streaming float track as output of the audio engine, written without ever blocking.
+ */
+public class AudioTrackSink implements AudioSink {
+
+  private static final String TAG = AudioTrackSink.class.getSimpleName();
+  // timestamps are not meant to be queried on every write, the mapping changes only slowly
+  private static final long TIMESTAMP_INTERVAL = 100 * 1000000L;
+
+  private final AudioTrack track;
+  private final int sampleRate, burstSize;
+  private final boolean lowLatency;
+  private final float[] silence = new float[AudioEngine.QUANTUM_SIZE];
+  private final AudioTimestamp timestamp = new AudioTimestamp();
+  private int fillTarget, underrunCount, underrunCountStart;
+  private long framesWritten, timelineStart, timestampPolled;
+  private boolean hasTimestamp;
+
+  public AudioTrackSink(
+      @NonNull AudioAttributes attributes, int sampleRate, int burstSize, boolean lowLatency
+  ) {
+    this.sampleRate = sampleRate;
+    this.burstSize = burstSize;
+    this.lowLatency = lowLatency && VERSION.SDK_INT >= VERSION_CODES.O;
+    track = getTrack(attributes);
+    fillTarget = getMinBufferSizeInFrames();
+    prime();
+  }
+
+  @Override
+  public int getSampleRate() {
+    return sampleRate;
+  }
+
+  /**
+   * Returns the number of frames written to the track which have not been played yet.
+   */
+  @Override
+  public int getFillLevel() {
+    // int arithmetic because the playback head position wraps around as unsigned int
+    return (int) framesWritten - track.getPlaybackHeadPosition();
+  }
+
+  @Override
+  public int getFillTarget() {
+    return fillTarget;
+  }
+
+  @Override
+  public int write(float[] data, int offset, int length) {
+    int result = track.write(data, offset, length, AudioTrack.WRITE_NON_BLOCKING);
+    if (result < 0) {
+      throw new IllegalStateException("Failed to play audio data. Error code: " + result);
+    }
+    framesWritten += result;
+    return result;
+  }
+
+  @NonNull
+  public AudioTrack getTrack() {
+    return track;
+  }
+
+  public boolean isLowLatency() {
+    return lowLatency;
+  }
+
+  /**
+   * Returns the device the track is currently played on, or null if it is unknown.
+   */
+  @Nullable
+  public AudioDeviceInfo getRoutedDevice() {
+    if (VERSION.SDK_INT >= VERSION_CODES.M) {
+      return track.getRoutedDevice();
+    }
+    return null;
+  }
+
+  /**
+   * Drops the timestamp of the previous device, its latency does not apply to the new one. The
+   * buffer size of the new device is applied if it is known from earlier playback.
+   */
+  public void onRouteChanged(int bufferSize) {
+    hasTimestamp = false;
+    timestampPolled = 0;
+    if (bufferSize > 0 && lowLatency && VERSION.SDK_INT >= VERSION_CODES.O) {
+      fillTarget = track.setBufferSizeInFrames(
+          Math.min(bufferSize, track.getBufferCapacityInFrames())
+      );
+      underrunCount = track.getUnderrunCount();
+    }
+  }
+
+  public boolean isInitialized() {
+    return track.getState() == AudioTrack.STATE_INITIALIZED;
+  }
+
+  /**
+   * Takes the current buffer size as fill target and the current underruns as baseline. The
+   * timeline of the engine starts with the next frame written.
+   */
+  public void reset() {
+    if (VERSION.SDK_INT >= VERSION_CODES.O) {
+      underrunCount = track.getUnderrunCount();
+      underrunCountStart = underrunCount;
+    }
+    timelineStart = framesWritten;
+    timestampPolled = 0;
+    hasTimestamp = false;
+    if (VERSION.SDK_INT >= VERSION_CODES.M) {
+      fillTarget = track.getBufferSizeInFrames();
+    } else {
+      fillTarget = getMinBufferSizeInFrames();
+    }
+  }
+
+  /**
+   * Starts playback if it is not running yet, should be called after the buffer has been filled.
+   */
+  public void play() {
+    if (!isPlaying()) {
+      track.play();
+    }
+  }
+
+  public boolean isPlaying() {
+    return track.getPlayState() == AudioTrack.PLAYSTATE_PLAYING;
+  }
+
+  /**
+   * Pauses playback, drops the buffered audio and primes the track for the next start.
+   */
+  public void pause() {
+    track.pause();
+    track.flush();
+    prime();
+  }
+
+  public void release() {
+    track.release();
+  }
+
+  /**
+   * Writes a quantum of silence to the paused track, so the output path is already fed when
+   * playback starts. The fill level is counted from the current head position.
+   */
+  private void prime() {
+    framesWritten = track.getPlaybackHeadPosition();
+    int result = track.write(silence, 0, silence.length, AudioTrack.WRITE_NON_BLOCKING);
+    if (result > 0) {
+      framesWritten += result;
+    }
+  }
+
+  /**
+   * Passes the latest presentation timestamp of the track, mapped onto the timeline of the engine,
+   * and the underruns since the last reset to the monitor. Does nothing if the last timestamp has
+   * been taken only a moment ago.
+   */
+  public void pollTimestamp(@NonNull TimingMonitor monitor) {
+    long now = System.nanoTime();
+    if (now - timestampPolled < TIMESTAMP_INTERVAL) {
+      return;
+    }
+    timestampPolled = now;
+    if (track.getTimestamp(timestamp)) {
+      hasTimestamp = true;
+      monitor.onTimestamp(timestamp.framePosition - timelineStart, timestamp.nanoTime);
+    }
+    if (VERSION.SDK_INT >= VERSION_CODES.O) {
+      monitor.onUnderruns(track.getUnderrunCount() - underrunCountStart);
+    }
+  }
+
+  /**
+   * Returns the time in nanoseconds until the frame on the timeline of the engine is presented,
+   * estimated with the latest timestamp, or with the playback head as long as there is none.
+   */
+  public long getPresentationDelay(long frame) {
+    long trackFrame = timelineStart + frame;
+    if (hasTimestamp) {
+      long framesUntil = trackFrame - timestamp.framePosition;
+      return timestamp.nanoTime + framesUntil * 1000000000L / sampleRate - System.nanoTime();
+    }
+    long framesUntil = trackFrame - (framesWritten - getFillLevel());
+    return framesUntil * 1000000000L / sampleRate;
+  }
+
+  /**
+   * Grows the buffer by one burst if underruns have occurred since the last call, until the
+   * playback is free of glitches or the capacity of the track is reached. Returns true if the
+   * buffer size has changed.
+   */
+  public boolean adaptBufferSize() {
+    if (!lowLatency || VERSION.SDK_INT < VERSION_CODES.O) {
+      return false;
+    }
+    int underrunCount = track.getUnderrunCount();
+    boolean changed = false;
+    if (underrunCount > this.underrunCount && fillTarget < track.getBufferCapacityInFrames()) {
+      fillTarget = track.setBufferSizeInFrames(fillTarget + burstSize);
+      changed = true;
+      Log.i(TAG, "adaptBufferSize: increased buffer size to " + fillTarget + " frames");
+    }
+    this.underrunCount = underrunCount;
+    return changed;
+  }
+
+  private AudioTrack getTrack(AudioAttributes attributes) {
+    AudioFormat audioFormat = new AudioFormat.Builder()
+        .setEncoding(AudioFormat.ENCODING_PCM_FLOAT)
+        .setSampleRate(sampleRate)
+        .setChannelMask(AudioFormat.CHANNEL_OUT_MONO)
+        .build();
+    if (lowLatency && VERSION.SDK_INT >= VERSION_CODES.O) {
+      AudioTrack track = new AudioTrack.Builder()
+          .setAudioAttributes(attributes)
+          .setAudioFormat(audioFormat)
+          .setBufferSizeInBytes(getMinBufferSizeInFrames() * Float.BYTES)
+          .setTransferMode(AudioTrack.MODE_STREAM)
+          .setPerformanceMode(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY)
+          .build();
+      // start with the smallest workable size, grown in adaptBufferSize() on underruns
+      track.setBufferSizeInFrames(burstSize * 2);
+      return track;
+    }
+    return new AudioTrack(
+        attributes,
+        audioFormat,
+        getMinBufferSizeInFrames() * Float.BYTES,
+        AudioTrack.MODE_STREAM,
+        AudioManager.AUDIO_SESSION_ID_GENERATE
+    );
+  }
+
+  private int getMinBufferSizeInFrames() {
+    int minBufferSize = AudioTrack.getMinBufferSize(
+        sampleRate, AudioFormat.CHANNEL_OUT_MONO, AudioFormat.ENCODING_PCM_FLOAT
+    );
+    return minBufferSize / Float.BYTES;
+  }
+}
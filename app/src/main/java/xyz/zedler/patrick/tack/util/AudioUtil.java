@@ -21,63 +21,120 @@ package xyz.zedler.patrick.tack.util;
 
 import android.content.Context;
 import android.media.AudioAttributes;
+import android.media.AudioDeviceCallback;
+import android.media.AudioDeviceInfo;
 import android.media.AudioFocusRequest;
-import android.media.AudioFormat;
 import android.media.AudioManager;
 import android.media.AudioManager.OnAudioFocusChangeListener;
+import android.media.AudioRouting;
 import android.media.AudioTrack;
-import android.media.audiofx.LoudnessEnhancer;
-import android.os.Build;
+import android.media.AudioTrack.OnPlaybackPositionUpdateListener;
 import android.os.Build.VERSION;
 import android.os.Build.VERSION_CODES;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import androidx.annotation.NonNull;
-import androidx.annotation.RawRes;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import androidx.annotation.Nullable;
 import java.nio.FloatBuffer;
-import java.nio.charset.StandardCharsets;
-import xyz.zedler.patrick.tack.Constants.SOUND;
-import xyz.zedler.patrick.tack.Constants.TICK_TYPE;
-import xyz.zedler.patrick.tack.R;
-import xyz.zedler.patrick.tack.util.MetronomeUtil.Tick;
+import xyz.zedler.patrick.tack.core.AudioEngine;
+import xyz.zedler.patrick.tack.core.GainStage;
+import xyz.zedler.patrick.tack.core.Pattern;
+import xyz.zedler.patrick.tack.core.Tick;
+import xyz.zedler.patrick.tack.core.TickType;
+import xyz.zedler.patrick.tack.core.TimingMonitor;
+import xyz.zedler.patrick.tack.core.TimingMonitor.Stats;
+import xyz.zedler.patrick.tack.util.SoundBank.SoundSet;
 
 public class AudioUtil implements OnAudioFocusChangeListener {
 
   private static final String TAG = AudioUtil.class.getSimpleName();
   private static final boolean DEBUG = false;
 
-  public static final int SAMPLE_RATE_IN_HZ = 48000;
-  private static final int SILENCE_CHUNK_SIZE = 8000;
-  private static final int DATA_CHUNK_SIZE = 8;
-  private static final byte[] DATA_MARKER = "data".getBytes(StandardCharsets.US_ASCII);
+  // used if the device does not report its output rate
+  private static final int SAMPLE_RATE_DEFAULT = 48000;
+  private static final float DUCK_LEVEL = 0.25f;
+  // paused track is kept for quick restarts and released after this time without playback
+  private static final long IDLE_TIMEOUT = 2 * 60 * 1000;
 
-  private final Context context;
   private final AudioManager audioManager;
   private final AudioListener listener;
-  private AudioTrack track;
-  private LoudnessEnhancer loudnessEnhancer;
-  private float[] tickStrong, tickNormal, tickSub;
+  private final Object trackLock = new Object();
+  private final Runnable fillRunnable = this::fill;
+  private final Runnable releaseRunnable = this::releaseIdleTrack;
+  private final Runnable routeRunnable = this::updateRoute;
+  private final Handler idleHandler = new Handler(Looper.getMainLooper());
+  private final SoundBank soundBank;
+  private final int sampleRate, burstSize;
+  private final AudioEngine engine;
+  private final TimingMonitor monitor;
+  private final OutputProfileUtil profileUtil;
+  private volatile AudioTrackSink sink;
+  private AudioThreadUtil audioThread;
+  private Handler handler;
+  private volatile int soundRequest;
+  private volatile SoundSet soundSet;
+  private volatile String route = OutputProfileUtil.ROUTE_DEFAULT;
+  // created on first use, their classes do not exist on older versions
+  private AudioRouting.OnRoutingChangedListener routingListener;
+  private AudioDeviceCallback deviceCallback;
   private int gain;
-  private boolean playing, muted, ignoreFocus;
-  private final float[] silence = new float[SILENCE_CHUNK_SIZE];
+  private volatile boolean playing, ducked;
+  private boolean ignoreFocus, lowLatency;
 
   public AudioUtil(@NonNull Context context, @NonNull AudioListener listener) {
-    this.context = context;
     this.listener = listener;
     audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+    // native rate and burst size of the output, so the system mixer does not need to resample
+    sampleRate = getOutputProperty(
+        AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE, SAMPLE_RATE_DEFAULT
+    );
+    burstSize = getOutputProperty(
+        AudioManager.PROPERTY_OUTPUT_FRAMES_PER_BUFFER, AudioEngine.QUANTUM_SIZE
+    );
+    soundBank = SoundBank.getInstance(context);
+    profileUtil = new OutputProfileUtil(new PrefsUtil(context).getSharedPrefs());
+    monitor = new TimingMonitor(sampleRate);
+    engine = new AudioEngine(sampleRate, this::onTick);
   }
 
-  public void play() {
-    playing = true;
-    track = getTrack();
-    loudnessEnhancer = new LoudnessEnhancer(track.getAudioSessionId());
-    loudnessEnhancer.setTargetGain(gain * 100);
-    loudnessEnhancer.setEnabled(gain > 0);
-    track.play();
+  /**
+   * Starts playback, the audio is rendered and written on the given thread.
+   */
+  public void play(@NonNull AudioThreadUtil audioThread) {
+    Handler handler = audioThread.getHandler();
+    synchronized (trackLock) {
+      this.audioThread = audioThread;
+      this.handler = handler;
+      playing = true;
+      engine.reset();
+      monitor.reset();
+      audioThread.resetStats();
+      idleHandler.removeCallbacks(releaseRunnable);
+      if (sink == null || sink.isLowLatency() != lowLatency) {
+        releaseTrack();
+        prepareTrack();
+      }
+      sink.reset();
+      AudioTrack track = sink.getTrack();
+      track.setPositionNotificationPeriod(sink.getFillTarget() / 2);
+      track.setPlaybackPositionUpdateListener(new OnPlaybackPositionUpdateListener() {
+        @Override
+        public void onMarkerReached(AudioTrack track) {
+        }
+
+        @Override
+        public void onPeriodicNotification(AudioTrack track) {
+          fill();
+        }
+      }, handler);
+      registerRouteCallbacks(track);
+      ducked = false;
+      updateGain();
+      // playback is started after the buffer has been filled for the first time
+    }
+    handler.post(fillRunnable);
+    handler.post(routeRunnable);
 
     if (ignoreFocus) {
       return;
@@ -96,277 +153,355 @@ public class AudioUtil implements OnAudioFocusChangeListener {
     }
   }
 
+  /**
+   * Stops playback but keeps the track paused and primed for the next start, until it is
+   * released after being idle for a while or when memory is low.
+   */
   public void stop() {
+    boolean wasPlaying = playing;
     playing = false;
-    if (track != null) {
-      if (track.getState() == AudioTrack.STATE_INITIALIZED) {
-        track.stop();
+    if (handler != null) {
+      handler.removeCallbacks(fillRunnable);
+      handler.removeCallbacks(routeRunnable);
+    }
+    if (DEBUG && wasPlaying) {
+      Log.i(TAG, "stop: timing of the last playback: " + monitor.getStats());
+      Log.i(TAG, "stop: audio thread of the last playback: " + audioThread.getStats());
+    }
+    synchronized (trackLock) {
+      if (sink != null) {
+        sink.getTrack().setPlaybackPositionUpdateListener(null);
+        unregisterRouteCallbacks(sink.getTrack());
+        if (sink.isInitialized()) {
+          sink.pause();
+          idleHandler.postDelayed(releaseRunnable, IDLE_TIMEOUT);
+        } else {
+          releaseTrack();
+        }
       }
-      track.flush();
-      track.release();
     }
     if (!ignoreFocus) {
       audioManager.abandonAudioFocus(this);
     }
   }
 
+  /**
+   * Creates and primes a paused track in advance, so the next start does not have to.
+   */
+  public void warmUp() {
+    synchronized (trackLock) {
+      if (playing) {
+        return;
+      }
+      idleHandler.removeCallbacks(releaseRunnable);
+      if (sink == null || sink.isLowLatency() != lowLatency) {
+        releaseTrack();
+        prepareTrack();
+      }
+      idleHandler.postDelayed(releaseRunnable, IDLE_TIMEOUT);
+    }
+  }
+
+  /**
+   * Releases the paused track if playback is stopped, e.g. when memory is low.
+   */
+  public void releaseIdleTrack() {
+    synchronized (trackLock) {
+      if (!playing) {
+        idleHandler.removeCallbacks(releaseRunnable);
+        releaseTrack();
+      }
+    }
+  }
+
+  public void destroy() {
+    stop();
+    synchronized (trackLock) {
+      idleHandler.removeCallbacks(releaseRunnable);
+      releaseTrack();
+    }
+  }
+
+  private void prepareTrack() {
+    sink = new AudioTrackSink(getAttributes(), sampleRate, burstSize, lowLatency);
+  }
+
+  private void releaseTrack() {
+    if (sink != null) {
+      sink.release();
+      sink = null;
+    }
+  }
+
   @Override
   public void onAudioFocusChange(int focusChange) {
     if (focusChange == AudioManager.AUDIOFOCUS_GAIN) {
-      if (track != null) {
-        track.setVolume(1);
-      }
+      ducked = false;
+      updateGain();
     } else if (focusChange == AudioManager.AUDIOFOCUS_LOSS) {
       stop();
       listener.onAudioStop();
     } else if (focusChange == AudioManager.AUDIOFOCUS_LOSS_TRANSIENT
         || focusChange == AudioManager.AUDIOFOCUS_LOSS_TRANSIENT_CAN_DUCK) {
-      if (track != null) {
-        track.setVolume(0.25f);
-      }
+      ducked = true;
+      updateGain();
     }
   }
 
-  public void tick(Tick tick, int tempo, int subdivisionCount) {
-    writeTickPeriod(tick, tempo, subdivisionCount);
-  }
-
-  public void setSound(String sound) {
-    int resIdNormal, resIdStrong, resIdSub;
-    Pitch pitchNormal = Pitch.NORMAL;
-    Pitch pitchStrong = Pitch.HIGH;
-    Pitch pitchSub = Pitch.LOW;
-    switch (sound) {
-      case SOUND.WOOD:
-        resIdNormal = R.raw.wood;
-        resIdStrong = R.raw.wood;
-        resIdSub = R.raw.wood;
-        break;
-      case SOUND.MECHANICAL:
-        resIdNormal = R.raw.mechanical_tick;
-        resIdStrong = R.raw.mechanical_ding;
-        resIdSub = R.raw.mechanical_knock;
-        pitchStrong = Pitch.NORMAL;
-        pitchSub = Pitch.NORMAL;
-        break;
-      case SOUND.BEATBOXING_1:
-        resIdNormal = R.raw.beatbox_snare1;
-        resIdStrong = R.raw.beatbox_kick1;
-        resIdSub = R.raw.beatbox_hihat1;
-        pitchStrong = Pitch.NORMAL;
-        pitchSub = Pitch.NORMAL;
-        break;
-      case SOUND.BEATBOXING_2:
-        resIdNormal = R.raw.beatbox_snare2;
-        resIdStrong = R.raw.beatbox_kick2;
-        resIdSub = R.raw.beatbox_hihat2;
-        pitchStrong = Pitch.NORMAL;
-        pitchSub = Pitch.NORMAL;
-        break;
-      case SOUND.HANDS:
-        resIdNormal = R.raw.hands_hit;
-        resIdStrong = R.raw.hands_clap;
-        resIdSub = R.raw.hands_snap;
-        pitchStrong = Pitch.NORMAL;
-        pitchSub = Pitch.NORMAL;
-        break;
-      case SOUND.FOLDING:
-        resIdNormal = R.raw.folding_knock;
-        resIdStrong = R.raw.folding_fold;
-        resIdSub = R.raw.folding_tap;
-        pitchStrong = Pitch.NORMAL;
-        pitchSub = Pitch.NORMAL;
-        break;
-      default:
-        resIdNormal = R.raw.sine;
-        resIdStrong = R.raw.sine;
-        resIdSub = R.raw.sine;
-        break;
+  /**
+   * Tops up the track buffer to the target fill level without ever blocking, so stop and focus
+   * changes are handled right away. Called on every position notification of the track, with a
+   * delayed fallback in case a notification gets lost.
+   */
+  private void fill() {
+    audioThread.onWorkStarted();
+    int fillTarget;
+    long deadline;
+    synchronized (trackLock) {
+      AudioTrackSink sink = this.sink;
+      if (!playing || sink == null) {
+        return;
+      }
+      // nothing is presented before the first fill, so there is no deadline to miss yet
+      deadline = sink.isPlaying()
+          ? sink.getFillLevel() * 1000000000L / sampleRate
+          : Long.MAX_VALUE;
+      if (sink.adaptBufferSize()) {
+        sink.getTrack().setPositionNotificationPeriod(sink.getFillTarget() / 2);
+        profileUtil.setBufferSize(route, sink.getFillTarget());
+      }
+      // fresh timestamp first, the ticks started in this fill are scheduled with it
+      sink.pollTimestamp(monitor);
+      engine.fill(sink);
+      sink.play();
+      fillTarget = sink.getFillTarget();
     }
-    tickNormal = loadAudio(resIdNormal, pitchNormal);
-    tickStrong = loadAudio(resIdStrong, pitchStrong);
-    tickSub = loadAudio(resIdSub, pitchSub);
+    // half of the time the buffered audio lasts at a notification, the rest is scheduling margin
+    audioThread.onWorkFinished(deadline, fillTarget * 1000000000L / sampleRate / 4);
+    handler.removeCallbacks(fillRunnable);
+    handler.postDelayed(fillRunnable, Math.max(1, fillTarget * 1000L / sampleRate / 2));
   }
 
-  public void setGain(int gain) {
-    this.gain = gain;
-    if (loudnessEnhancer != null) {
-      loudnessEnhancer.setTargetGain(gain * 100);
-      loudnessEnhancer.setEnabled(gain > 0);
+  private void registerRouteCallbacks(AudioTrack track) {
+    unregisterRouteCallbacks(track); // play() can be called again without stop()
+    if (VERSION.SDK_INT >= VERSION_CODES.N) {
+      if (routingListener == null) {
+        routingListener = router -> updateRoute();
+      }
+      track.addOnRoutingChangedListener(routingListener, handler);
+    }
+    if (VERSION.SDK_INT >= VERSION_CODES.M) {
+      // routing of the track is not always reported when a device is connected or removed
+      if (deviceCallback == null) {
+        deviceCallback = new AudioDeviceCallback() {
+          @Override
+          public void onAudioDevicesAdded(AudioDeviceInfo[] addedDevices) {
+            updateRoute();
+          }
+
+          @Override
+          public void onAudioDevicesRemoved(AudioDeviceInfo[] removedDevices) {
+            updateRoute();
+          }
+        };
+      }
+      audioManager.registerAudioDeviceCallback(deviceCallback, handler);
     }
   }
 
-  public int getGain() {
-    return gain;
+  private void unregisterRouteCallbacks(AudioTrack track) {
+    if (VERSION.SDK_INT >= VERSION_CODES.N && routingListener != null) {
+      track.removeOnRoutingChangedListener(routingListener);
+    }
+    if (VERSION.SDK_INT >= VERSION_CODES.M && deviceCallback != null) {
+      audioManager.unregisterAudioDeviceCallback(deviceCallback);
+    }
   }
 
-  public void setMuted(boolean muted) {
-    this.muted = muted;
+  /**
+   * Switches to the profile of the device the track is played on. Called on the audio thread.
+   * Timestamps and timing statistics start anew, because the latency of the new device differs.
+   */
+  private void updateRoute() {
+    String route;
+    synchronized (trackLock) {
+      AudioTrackSink sink = this.sink;
+      if (!playing || sink == null) {
+        return;
+      }
+      route = OutputProfileUtil.getRoute(sink.getRoutedDevice());
+      if (route.equals(this.route)) {
+        return;
+      }
+      this.route = route;
+      sink.onRouteChanged(profileUtil.getBufferSize(route));
+      sink.getTrack().setPositionNotificationPeriod(sink.getFillTarget() / 2);
+      monitor.reanchor();
+    }
+    Log.i(TAG, "updateRoute: output changed to " + route);
+    listener.onAudioRouteChanged(route);
   }
 
-  public void setIgnoreFocus(boolean ignore) {
-    ignoreFocus = ignore;
+  /**
+   * Returns the key of the output device of the current or last playback.
+   */
+  @NonNull
+  public String getRoute() {
+    return route;
   }
 
-  public boolean getIgnoreFocus() {
-    return ignoreFocus;
+  /**
+   * Returns the timing statistics of the current or last playback, measured with the
+   * presentation timestamps of the track.
+   */
+  public Stats getTimingStats() {
+    return monitor.getStats();
   }
 
-  private void writeTickPeriod(Tick tick, int tempo, int subdivisionCount) {
-    float[] tickSound = muted ? silence : getTickSound(tick.type);
-    int periodSize = 60 * SAMPLE_RATE_IN_HZ / tempo / subdivisionCount;
-    int sizeWritten = writeNextAudioData(tickSound, periodSize, 0);
+  /**
+   * Called on the audio thread for every tick whose sound is started in the current quantum.
+   */
+  private void onTick(@NonNull Tick tick) {
     if (DEBUG) {
-      Log.v(TAG, "writeTickPeriod: wrote tick sound for " + tick);
+      Log.v(TAG, "onTick: started tick sound for " + tick);
     }
-    writeSilenceUntilPeriodFinished(sizeWritten, periodSize);
+    monitor.onTick(tick.frame + engine.getLatency());
+    listener.onAudioTick(tick);
   }
 
-  private void writeSilenceUntilPeriodFinished(int previousSizeWritten, int periodSize) {
-    int sizeWritten = previousSizeWritten;
-    while (sizeWritten < periodSize) {
-      sizeWritten += writeNextAudioData(silence, periodSize, sizeWritten);
-      if (DEBUG) {
-        Log.v(TAG, "writeSilenceUntilPeriodFinished: wrote silence");
-      }
+  /**
+   * Returns the nanoseconds until the sound of the tick can be heard. Meant to be called from
+   * onAudioTick(), while the sound of the tick is started.
+   */
+  public long getTickDelay(@NonNull Tick tick) {
+    AudioTrackSink sink = this.sink;
+    if (sink == null) {
+      return 0;
     }
+    return sink.getPresentationDelay(tick.frame + engine.getLatency());
   }
 
-  private int writeNextAudioData(float[] data, int periodSize, int sizeWritten) {
-    int size = Math.min(data.length, periodSize - sizeWritten);
-    if (playing) {
-      writeAudio(track, data, size);
-    }
-    return size;
+  /**
+   * Copies the rendered tick with the given sequence number into the given tick and returns it,
+   * or null if its slot in the tick ring has been reused already.
+   */
+  @Nullable
+  public Tick getTick(int sequence, @NonNull Tick target) {
+    return engine.getTickRing().get(sequence, target);
   }
 
-  private float[] getTickSound(String tickType) {
+  /**
+   * Returns the sound played for the tick type, or null if it is muted or not loaded yet.
+   */
+  public FloatBuffer getTickSound(int tickType) {
+    SoundSet soundSet = this.soundSet;
+    if (soundSet == null) {
+      return null;
+    }
     switch (tickType) {
-      case TICK_TYPE.STRONG:
-        return tickStrong;
-      case TICK_TYPE.SUB:
-        return tickSub;
-      case TICK_TYPE.MUTED:
-        return silence;
+      case TickType.ID_STRONG:
+        return soundSet.tickStrong;
+      case TickType.ID_SUB:
+        return soundSet.tickSub;
+      case TickType.ID_MUTED:
+        return null;
       default:
-        return tickNormal;
+        return soundSet.tickNormal;
     }
   }
 
-  private static AudioTrack getTrack() {
-    AudioFormat audioFormat = new AudioFormat.Builder()
-        .setEncoding(AudioFormat.ENCODING_PCM_FLOAT)
-        .setSampleRate(SAMPLE_RATE_IN_HZ)
-        .setChannelMask(AudioFormat.CHANNEL_OUT_MONO)
-        .build();
-    return new AudioTrack(
-        getAttributes(),
-        audioFormat,
-        AudioTrack.getMinBufferSize(
-            audioFormat.getSampleRate(), audioFormat.getChannelMask(), audioFormat.getEncoding()
-        ),
-        AudioTrack.MODE_STREAM,
-        AudioManager.AUDIO_SESSION_ID_GENERATE
-    );
+  public int getSampleRate() {
+    return sampleRate;
   }
 
-  private static AudioAttributes getAttributes() {
-    return new AudioAttributes.Builder()
-        .setUsage(AudioAttributes.USAGE_MEDIA)
-        .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
-        .build();
+  public void setPattern(float tempo, String[] beats, String[] subdivisions) {
+    engine.setPattern(new Pattern(tempo, beats, subdivisions));
   }
 
-  private float[] loadAudio(@RawRes int resId, Pitch pitch) {
-    try (InputStream stream = context.getResources().openRawResource(resId)) {
-      return adjustPitch(readDataFromWavFloat(stream), pitch);
-    } catch (IOException e) {
-      throw new RuntimeException(e);
-    }
+  /**
+   * Takes the sounds from the shared sound bank, the previous sounds are used until the new ones
+   * are loaded.
+   */
+  public void setSound(String sound) {
+    // synthesized sounds can be requested again with other parameters, so requests are counted
+    int request = ++soundRequest;
+    soundBank.load(sound, sampleRate, soundSet -> {
+      synchronized (this) {
+        if (request != soundRequest) {
+          return; // another sound has been requested in the meantime
+        }
+        engine.setSounds(
+            soundSet.key, soundSet.tickNormal, soundSet.tickStrong, soundSet.tickSub
+        );
+        this.soundSet = soundSet;
+      }
+    });
   }
 
-  private float[] adjustPitch(float[] originalData, Pitch pitch) {
-    if (pitch == Pitch.HIGH) {
-      float[] newData = new float[originalData.length / 2];
-      for (int i = 0; i < newData.length; i++) {
-        newData[i] = originalData[i * 2];
-      }
-      return newData;
-    } else if (pitch == Pitch.LOW) {
-      float[] newData = new float[originalData.length * 2];
-      for (int i = 0, j = 0; i < originalData.length; i++, j += 2) {
-        newData[j] = originalData[i];
-        newData[j + 1] = originalData[i];
-      }
-      return newData;
-    } else {
-      return originalData;
-    }
+  /**
+   * Sets the output gain in dB, peaks above full scale are caught by the limiter.
+   */
+  public void setGain(int gain) {
+    this.gain = gain;
+    updateGain();
   }
 
-  private static void writeAudio(AudioTrack track, float[] data, int size) {
-    int result = track.write(data, 0, size, AudioTrack.WRITE_BLOCKING);
-    if (result < 0) {
-      throw new IllegalStateException("Failed to play audio data. Error code: " + result);
-    }
+  private void updateGain() {
+    engine.setGain(GainStage.dbToLinear(gain) * (ducked ? DUCK_LEVEL : 1));
   }
 
-  private static float[] readDataFromWavFloat(InputStream input) throws IOException {
-    byte[] content;
-    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-      content = input.readAllBytes();
-    } else {
-      content = readInputStreamToBytes(input);
-    }
-    int indexOfDataMarker = getIndexOfDataMarker(content);
-    if (indexOfDataMarker < 0) {
-      throw new RuntimeException("Could not find data marker in the content");
-    }
-    int startOfSound = indexOfDataMarker + DATA_CHUNK_SIZE;
-    if (startOfSound > content.length) {
-      throw new RuntimeException("Too short data chunk");
-    }
-    ByteBuffer byteBuffer = ByteBuffer.wrap(
-        content, startOfSound, content.length - startOfSound
-    );
-    byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-    FloatBuffer floatBuffer = byteBuffer.asFloatBuffer();
-    float[] data = new float[floatBuffer.remaining()];
-    floatBuffer.get(data);
-    return data;
-  }
-
-  private static byte[] readInputStreamToBytes(InputStream input) throws IOException {
-    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-    int read;
-    byte[] data = new byte[4096];
-    while ((read = input.read(data, 0, data.length)) != -1) {
-      buffer.write(data, 0, read);
-    }
-    return buffer.toByteArray();
+  /**
+   * Sets the linear levels of the tick types, rendered into the cached bars.
+   */
+  public void setTickLevels(float levelStrong, float levelNormal, float levelSub) {
+    engine.setTickLevels(levelStrong, levelNormal, levelSub);
   }
 
-  private static int getIndexOfDataMarker(byte[] array) {
-    if (DATA_MARKER.length == 0) {
-      return 0;
-    }
-    outer:
-    for (int i = 0; i < array.length - DATA_MARKER.length + 1; i++) {
-      for (int j = 0; j < DATA_MARKER.length; j++) {
-        if (array[i + j] != DATA_MARKER[j]) {
-          continue outer;
-        }
-      }
-      return i;
+  public int getGain() {
+    return gain;
+  }
+
+  public void setMuted(boolean muted) {
+    engine.setMuted(muted);
+  }
+
+  public void setIgnoreFocus(boolean ignore) {
+    ignoreFocus = ignore;
+  }
+
+  public boolean getIgnoreFocus() {
+    return ignoreFocus;
+  }
+
+  /**
+   * Takes effect with the next call of play().
+   */
+  public void setLowLatency(boolean lowLatency) {
+    this.lowLatency = lowLatency;
+  }
+
+  public boolean getLowLatency() {
+    return lowLatency;
+  }
+
+  private int getOutputProperty(String key, int def) {
+    try {
+      return Integer.parseInt(audioManager.getProperty(key));
+    } catch (NumberFormatException e) {
+      return def;
     }
-    return -1;
   }
 
-  private enum Pitch {
-    NORMAL, HIGH, LOW
+  private static AudioAttributes getAttributes() {
+    return new AudioAttributes.Builder()
+        .setUsage(AudioAttributes.USAGE_MEDIA)
+        .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+        .build();
   }
 
   public interface AudioListener {
     void onAudioStop();
+    void onAudioTick(@NonNull Tick tick);
+    void onAudioRouteChanged(@NonNull String route);
   }
-}
\ No newline at end of file
+}
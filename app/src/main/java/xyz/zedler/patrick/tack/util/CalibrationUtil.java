@@ -0,0 +1,209 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.util;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.AudioTimestamp;
+import android.media.MediaRecorder.AudioSource;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import java.nio.FloatBuffer;
+import xyz.zedler.patrick.tack.core.LatencyDetector;
+import xyz.zedler.patrick.tack.core.LatencyDetector.Result;
+
+/**
+ * Records the playing metronome with the microphone and measures how much later the ticks can be
+ * heard than their presentation timestamps predict. The result is the latency trim for visuals
+ * and haptics.
+ */
+public class CalibrationUtil {
+
+  private static final String TAG = CalibrationUtil.class.getSimpleName();
+
+  private static final long RECORDING_DURATION = 5000;
+  // same range as the latency setting
+  public static final long LATENCY_MAX = 50;
+  // weaker matches are most likely noise or a muted speaker
+  private static final double CORRELATION_MIN = 0.3;
+  private static final int TICK_COUNT_MAX = 64;
+
+  private final int sampleRate;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private final long[] tickTimes = new long[TICK_COUNT_MAX];
+  private final FloatBuffer[] tickSounds = new FloatBuffer[TICK_COUNT_MAX];
+  private int tickCount;
+  private volatile boolean running;
+
+  public CalibrationUtil(int sampleRate) {
+    this.sampleRate = sampleRate;
+  }
+
+  /**
+   * Starts recording on a background thread, the result is passed to the listener on the main
+   * thread. Requires the permission to record audio.
+   */
+  public void start(@NonNull OnCalibratedListener listener) {
+    running = true;
+    new Thread(() -> {
+      Long latency = null;
+      try {
+        latency = measure();
+      } catch (Exception e) {
+        Log.e(TAG, "start: calibration failed", e);
+      }
+      boolean cancelled = !running;
+      running = false;
+      Long result = latency;
+      mainHandler.post(() -> {
+        if (cancelled) {
+          return;
+        }
+        if (result != null) {
+          listener.onCalibrated(result);
+        } else {
+          listener.onCalibrationFailed();
+        }
+      });
+    }, "latency_calibration").start();
+  }
+
+  public void cancel() {
+    running = false;
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Adds a played tick, which is presented at the given time of System.nanoTime(). Called on the
+   * audio thread.
+   */
+  public synchronized void addTick(long presentationTime, FloatBuffer sound) {
+    if (running && sound != null && tickCount < TICK_COUNT_MAX) {
+      tickTimes[tickCount] = presentationTime;
+      tickSounds[tickCount] = sound;
+      tickCount++;
+    }
+  }
+
+  private Long measure() {
+    int bufferSize = Math.max(
+        AudioRecord.getMinBufferSize(
+            sampleRate, AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT
+        ),
+        sampleRate / 10 * Short.BYTES
+    );
+    int source = VERSION.SDK_INT >= VERSION_CODES.N
+        ? AudioSource.UNPROCESSED
+        : AudioSource.VOICE_RECOGNITION;
+    AudioRecord record = new AudioRecord(
+        source, sampleRate, AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT, bufferSize
+    );
+    if (record.getState() != AudioRecord.STATE_INITIALIZED) {
+      record.release();
+      // unprocessed source is optional, fall back to the one with the least processing
+      record = new AudioRecord(
+          AudioSource.VOICE_RECOGNITION,
+          sampleRate, AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT, bufferSize
+      );
+      if (record.getState() != AudioRecord.STATE_INITIALIZED) {
+        record.release();
+        Log.e(TAG, "measure: could not initialize recording");
+        return null;
+      }
+    }
+
+    LatencyDetector detector = new LatencyDetector(
+        sampleRate, (int) (sampleRate * LATENCY_MAX / 1000)
+    );
+    short[] buffer = new short[bufferSize / Short.BYTES / 2];
+    float[] data = new float[buffer.length];
+    AudioTimestamp timestamp = new AudioTimestamp();
+    boolean hasTimestamp = false;
+    long firstFrameTime = 0;
+    long frames = sampleRate * RECORDING_DURATION / 1000;
+    try {
+      record.startRecording();
+      while (running && detector.getRecordingSize() < frames) {
+        int read = record.read(buffer, 0, buffer.length);
+        if (read < 0) {
+          Log.e(TAG, "measure: recording failed with error code " + read);
+          return null;
+        }
+        if (detector.getRecordingSize() == 0) {
+          // without timestamps, the frames just read are assumed to have been captured until now.
+          // The input latency is unknown before API 24 and not accounted for, the frames have
+          // been captured earlier than assumed, so the measured latency is too high by it.
+          firstFrameTime = System.nanoTime() - read * 1000000000L / sampleRate;
+        }
+        for (int i = 0; i < read; i++) {
+          data[i] = buffer[i] / 32768f;
+        }
+        detector.addRecording(data, 0, read);
+        if (!hasTimestamp && VERSION.SDK_INT >= VERSION_CODES.N) {
+          hasTimestamp = record.getTimestamp(timestamp, AudioTimestamp.TIMEBASE_MONOTONIC)
+              == AudioRecord.SUCCESS;
+        }
+      }
+    } finally {
+      record.stop();
+      record.release();
+    }
+    if (!running) {
+      return null;
+    }
+
+    synchronized (this) {
+      for (int i = 0; i < tickCount; i++) {
+        long frame;
+        if (hasTimestamp) {
+          long nanosSince = tickTimes[i] - timestamp.nanoTime;
+          frame = timestamp.framePosition + nanosSince * sampleRate / 1000000000L;
+        } else {
+          frame = (tickTimes[i] - firstFrameTime) * sampleRate / 1000000000L;
+        }
+        detector.addClick(frame, tickSounds[i]);
+      }
+    }
+    Result result = detector.detect();
+    if (result == null || result.correlation < CORRELATION_MIN) {
+      Log.i(TAG, "measure: no ticks found in the recording");
+      return null;
+    }
+    long latency = Math.round(result.lag * 1000d / sampleRate);
+    Log.i(
+        TAG,
+        "measure: latency " + latency + " ms with correlation " + result.correlation
+            + " over " + result.clickCount + " ticks"
+    );
+    return Math.abs(latency) < LATENCY_MAX ? latency : null;
+  }
+
+  public interface OnCalibratedListener {
+    void onCalibrated(long latency);
+    void onCalibrationFailed();
+  }
+}
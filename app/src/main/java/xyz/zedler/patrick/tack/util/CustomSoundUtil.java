@@ -0,0 +1,299 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.util;
+
+import android.content.Context;
+import android.media.AudioFormat;
+import android.media.MediaCodec;
+import android.media.MediaCodec.BufferInfo;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.net.Uri;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import xyz.zedler.patrick.tack.core.PcmCache;
+
+/**
+ * Imports audio files of any format the system can decode as tick sounds. The decoded audio is
+ * kept as source file in the app files, the sound played at the output sample rate is trimmed,
+ * normalized and resampled from it once into the app cache and then memory-mapped.
+ */
+public class CustomSoundUtil {
+
+  private static final String TAG = CustomSoundUtil.class.getSimpleName();
+
+  private static final String DIRECTORY = "sounds";
+  private static final String PREFIX = "custom_";
+  private static final String EXTENSION = ".pcm";
+  // longer files are cut off, nobody needs a tick sound this long
+  private static final int DURATION_MAX = 30;
+  private static final long TIMEOUT_US = 10000;
+
+  private final Context context;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+  public CustomSoundUtil(@NonNull Context context) {
+    this.context = context;
+  }
+
+  /**
+   * Decodes the file in the background and replaces the sound of the tick type with it, the
+   * result is passed to the listener on the main thread.
+   */
+  public void importSound(
+      @NonNull Uri uri, @NonNull String tickType, int sampleRate,
+      @NonNull OnImportedListener listener
+  ) {
+    new Thread(() -> {
+      boolean success = false;
+      // not matched by the names of imported sounds until the import is complete
+      File temp = new File(getDirectory(false), PREFIX + tickType + ".tmp");
+      File cache = new File(getDirectory(true), PREFIX + tickType + ".tmp");
+      try {
+        int sourceRate = decode(uri, temp);
+        // processed right away, so silent files are rejected and the first load is instant
+        if (PcmCache.process(temp, sourceRate, cache, sampleRate)) {
+          delete(tickType);
+          File source = new File(getDirectory(false), getSourceName(tickType, sourceRate));
+          if (!temp.renameTo(source)) {
+            throw new IOException("Could not save " + source);
+          }
+          success = cache.renameTo(
+              new File(getDirectory(true), getCacheName(source, sampleRate))
+          );
+        } else {
+          Log.e(TAG, "importSound: file is silent");
+        }
+      } catch (Exception e) {
+        Log.e(TAG, "importSound: could not import " + uri, e);
+      } finally {
+        for (File file : new File[]{temp, cache}) {
+          if (file.exists() && !file.delete()) {
+            Log.e(TAG, "importSound: could not delete " + file);
+          }
+        }
+      }
+      boolean result = success;
+      mainHandler.post(() -> {
+        if (result) {
+          listener.onImported();
+        } else {
+          listener.onImportFailed();
+        }
+      });
+    }, "sound_import").start();
+  }
+
+  /**
+   * Returns the decoded file of the tick type, or null if no sound has been imported for it.
+   */
+  @Nullable
+  public File getSource(@NonNull String tickType) {
+    File[] files = getDirectory(false).listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (file.getName().startsWith(PREFIX + tickType + "_")) {
+          return file;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Maps the sound of the source at the sample rate, it is only processed if it has not been
+   * cached yet or the cache has been cleared by the system.
+   */
+  public FloatBuffer load(@NonNull File source, int sampleRate) throws IOException {
+    File cache = new File(getDirectory(true), getCacheName(source, sampleRate));
+    if (!cache.exists()) {
+      String name = source.getName();
+      int sourceRate = Integer.parseInt(
+          name.substring(name.lastIndexOf('_') + 1, name.length() - EXTENSION.length())
+      );
+      if (!PcmCache.process(source, sourceRate, cache, sampleRate)) {
+        throw new IOException("Source is silent: " + source);
+      }
+    }
+    return PcmCache.map(cache);
+  }
+
+  /**
+   * Deletes the imported sound of the tick type and all its cached versions.
+   */
+  public void delete(@NonNull String tickType) {
+    for (boolean isCache : new boolean[]{false, true}) {
+      File[] files = getDirectory(isCache).listFiles();
+      if (files == null) {
+        continue;
+      }
+      for (File file : files) {
+        String name = file.getName();
+        if (name.startsWith(PREFIX + tickType + "_") && name.endsWith(EXTENSION)) {
+          if (!file.delete()) {
+            Log.e(TAG, "delete: could not delete " + file);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Decodes the first audio track of the file in chunks and writes it downmixed to mono into the
+   * target. Returns the sample rate of the decoded audio.
+   */
+  private int decode(Uri uri, File target) throws IOException {
+    MediaExtractor extractor = new MediaExtractor();
+    MediaCodec codec = null;
+    try (PcmCache.Writer writer = new PcmCache.Writer(target)) {
+      extractor.setDataSource(context, uri, null);
+      MediaFormat format = null;
+      for (int i = 0; i < extractor.getTrackCount() && format == null; i++) {
+        MediaFormat trackFormat = extractor.getTrackFormat(i);
+        String mime = trackFormat.getString(MediaFormat.KEY_MIME);
+        if (mime != null && mime.startsWith("audio/")) {
+          extractor.selectTrack(i);
+          format = trackFormat;
+        }
+      }
+      if (format == null) {
+        throw new IOException("No audio track found");
+      }
+      int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+      int channelCount = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+      int encoding = AudioFormat.ENCODING_PCM_16BIT;
+      codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+      codec.configure(format, null, null, 0);
+      codec.start();
+
+      BufferInfo info = new BufferInfo();
+      float[] chunk = new float[0];
+      boolean inputDone = false, outputDone = false;
+      while (!outputDone) {
+        if (!inputDone) {
+          int index = codec.dequeueInputBuffer(TIMEOUT_US);
+          if (index >= 0) {
+            ByteBuffer buffer = codec.getInputBuffer(index);
+            int size = buffer != null ? extractor.readSampleData(buffer, 0) : -1;
+            if (size < 0) {
+              codec.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+              inputDone = true;
+            } else {
+              codec.queueInputBuffer(index, 0, size, extractor.getSampleTime(), 0);
+              extractor.advance();
+            }
+          }
+        }
+        int index = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+        if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+          MediaFormat outputFormat = codec.getOutputFormat();
+          sampleRate = outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+          channelCount = outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+          if (VERSION.SDK_INT >= VERSION_CODES.N
+              && outputFormat.containsKey(MediaFormat.KEY_PCM_ENCODING)) {
+            encoding = outputFormat.getInteger(MediaFormat.KEY_PCM_ENCODING);
+          }
+        } else if (index >= 0) {
+          ByteBuffer buffer = codec.getOutputBuffer(index);
+          if (buffer != null && info.size > 0) {
+            buffer.position(info.offset);
+            buffer.limit(info.offset + info.size);
+            chunk = downmix(buffer.order(ByteOrder.nativeOrder()), encoding, channelCount, chunk);
+            writer.write(chunk, 0, info.size / getFrameSize(encoding, channelCount));
+          }
+          codec.releaseOutputBuffer(index, false);
+          outputDone = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0
+              || writer.getFrameCount() >= (long) sampleRate * DURATION_MAX;
+        }
+      }
+      if (writer.getFrameCount() == 0) {
+        throw new IOException("No audio decoded");
+      }
+      return sampleRate;
+    } finally {
+      if (codec != null) {
+        codec.release();
+      }
+      extractor.release();
+    }
+  }
+
+  /**
+   * Converts the interleaved samples of the buffer to mono floats, the array is reused if it is
+   * large enough.
+   */
+  private static float[] downmix(ByteBuffer buffer, int encoding, int channelCount, float[] data) {
+    int frames = buffer.remaining() / getFrameSize(encoding, channelCount);
+    if (data.length < frames) {
+      data = new float[frames];
+    }
+    for (int i = 0; i < frames; i++) {
+      float sum = 0;
+      for (int c = 0; c < channelCount; c++) {
+        sum += encoding == AudioFormat.ENCODING_PCM_FLOAT
+            ? buffer.getFloat()
+            : buffer.getShort() / 32768f;
+      }
+      data[i] = sum / channelCount;
+    }
+    return data;
+  }
+
+  private static int getFrameSize(int encoding, int channelCount) {
+    return (encoding == AudioFormat.ENCODING_PCM_FLOAT ? 4 : 2) * channelCount;
+  }
+
+  private File getDirectory(boolean isCache) {
+    File directory = new File(isCache ? context.getCacheDir() : context.getFilesDir(), DIRECTORY);
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      Log.e(TAG, "getDirectory: could not create " + directory);
+    }
+    return directory;
+  }
+
+  private static String getSourceName(String tickType, int sampleRate) {
+    return PREFIX + tickType + "_" + sampleRate + EXTENSION;
+  }
+
+  /**
+   * Returns the name of the cached sound of the source at the sample rate. The time of the last
+   * change is part of it, so a sound imported later never plays from an older cache.
+   */
+  private static String getCacheName(File source, int sampleRate) {
+    String name = source.getName();
+    return name.substring(0, name.lastIndexOf('_')) + "_" + source.lastModified()
+        + "_" + sampleRate + EXTENSION;
+  }
+
+  public interface OnImportedListener {
+    void onImported();
+    void onImportFailed();
+  }
+}
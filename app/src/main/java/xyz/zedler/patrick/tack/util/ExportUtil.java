@@ -0,0 +1,122 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.util;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.DocumentsContract;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.util.concurrent.ForkJoinPool;
+import xyz.zedler.patrick.tack.core.OfflineRenderer;
+import xyz.zedler.patrick.tack.core.WavWriter;
+
+/**
+ * Writes a click track rendered offline as WAV file to a document, for use in other apps.
+ */
+public class ExportUtil {
+
+  private static final String TAG = ExportUtil.class.getSimpleName();
+
+  private final Context context;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private volatile boolean running;
+
+  public ExportUtil(@NonNull Context context) {
+    this.context = context;
+  }
+
+  /**
+   * Renders on all cores in the background, the result is passed to the listener on the main
+   * thread.
+   */
+  public void export(
+      @NonNull OfflineRenderer renderer, @NonNull Uri uri, @NonNull OnExportedListener listener
+  ) {
+    running = true;
+    new Thread(() -> {
+      boolean success = false;
+      ForkJoinPool pool = new ForkJoinPool();
+      try (
+          OutputStream stream = openOutputStream(uri);
+          WavWriter writer = new WavWriter(
+              Channels.newChannel(stream), renderer.getSampleRate(), renderer.getFrameCount()
+          )
+      ) {
+        renderer.render(pool, writer);
+        success = true;
+      } catch (Exception e) {
+        // also when finishing the file on close has failed after rendering
+        success = false;
+        Log.e(TAG, "export: could not export click track", e);
+      } finally {
+        pool.shutdown();
+      }
+      if (!success) {
+        deleteDocument(uri);
+      }
+      running = false;
+      boolean result = success;
+      mainHandler.post(() -> {
+        if (result) {
+          listener.onExported();
+        } else {
+          listener.onExportFailed();
+        }
+      });
+    }, "click_track_export").start();
+  }
+
+  @NonNull
+  private OutputStream openOutputStream(@NonNull Uri uri) throws IOException {
+    OutputStream stream = context.getContentResolver().openOutputStream(uri, "w");
+    if (stream == null) {
+      throw new IOException("Could not open " + uri);
+    }
+    return stream;
+  }
+
+  /**
+   * Removes the document of a failed export, so no incomplete WAV file is left behind.
+   */
+  private void deleteDocument(@NonNull Uri uri) {
+    try {
+      if (!DocumentsContract.deleteDocument(context.getContentResolver(), uri)) {
+        Log.e(TAG, "deleteDocument: could not delete " + uri);
+      }
+    } catch (Exception e) {
+      Log.e(TAG, "deleteDocument: could not delete " + uri, e);
+    }
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  public interface OnExportedListener {
+    void onExported();
+    void onExportFailed();
+  }
+}
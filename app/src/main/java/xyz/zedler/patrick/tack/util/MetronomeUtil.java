@@ -24,13 +24,16 @@ import android.animation.AnimatorListenerAdapter;
 import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.net.Uri;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
 import android.util.Log;
 import android.view.animation.LinearInterpolator;
 import androidx.annotation.NonNull;
-import androidx.preference.PreferenceManager;
+import androidx.annotation.Nullable;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.Arrays;
@@ -44,29 +47,62 @@ import xyz.zedler.patrick.tack.Constants.PREF;
 import xyz.zedler.patrick.tack.Constants.TICK_TYPE;
 import xyz.zedler.patrick.tack.Constants.UNIT;
 import xyz.zedler.patrick.tack.R;
+import xyz.zedler.patrick.tack.core.ClickTrack;
+import xyz.zedler.patrick.tack.core.GainStage;
+import xyz.zedler.patrick.tack.core.OfflineRenderer;
+import xyz.zedler.patrick.tack.core.Pattern;
+import xyz.zedler.patrick.tack.core.Tick;
+import xyz.zedler.patrick.tack.core.TickRing;
+import xyz.zedler.patrick.tack.core.TickType;
+import xyz.zedler.patrick.tack.core.Timing;
+import xyz.zedler.patrick.tack.core.TimingMonitor.Stats;
+import xyz.zedler.patrick.tack.util.AudioUtil.AudioListener;
+import xyz.zedler.patrick.tack.util.CalibrationUtil.OnCalibratedListener;
+import xyz.zedler.patrick.tack.util.CustomSoundUtil.OnImportedListener;
+import xyz.zedler.patrick.tack.util.ExportUtil.OnExportedListener;
 
 public class MetronomeUtil {
 
   private static final String TAG = MetronomeUtil.class.getSimpleName();
 
+  // length of exported click tracks without timer
+  private static final long EXPORT_DURATION_DEFAULT = 5 * 60000L;
+
+  private static final int MSG_PRE_TICK = 0;
+  private static final int MSG_TICK = 1;
+
   private final Context context;
   private final SharedPreferences sharedPrefs;
   private final AudioUtil audioUtil;
   private final HapticUtil hapticUtil;
+  private final OutputProfileUtil profileUtil;
+  private final ExportUtil exportUtil;
+  private final CustomSoundUtil customSoundUtil;
   private final ShortcutUtil shortcutUtil;
   private final Set<MetronomeListener> listeners = new HashSet<>();
+  // snapshot of the listeners for the tick callbacks, iterating the set would allocate per tick
+  private volatile MetronomeListener[] tickListeners = new MetronomeListener[0];
+  // ticks are copied out of the ring into this one on the callback thread, see TickRing
+  private final Tick callbackTick = new Tick();
+  private final Tick rescheduleTick = new Tick();
+  // sequence numbers of the last posted and dispatched ticks, compared with wrap-around
+  private volatile int postedSequence, preTickSequence, tickSequence;
+  private volatile boolean hasPostedTicks;
   private final boolean fromService;
-  private HandlerThread audioThread, callbackThread;
+  private final AudioThreadUtil audioThread;
+  private HandlerThread callbackThread;
   private Handler tickHandler, latencyHandler;
   private Handler countInHandler, incrementalHandler, elapsedHandler, timerHandler;
   private String incrementalUnit, timerUnit;
   private String[] beats, subdivisions;
   private ValueAnimator timerAnimator;
-  private int tempo, countIn, incrementalAmount, incrementalInterval, timerDuration;
-  private long tickIndex, latency, elapsedStartTime, elapsedTime, elapsedPrevious, timerStartTime;
+  private volatile CalibrationUtil calibrationUtil;
+  private float tempo;
+  private int countIn, incrementalAmount, incrementalInterval, timerDuration;
+  private long latency, elapsedStartTime, elapsedTime, elapsedPrevious, timerStartTime;
   private float timerProgress;
   private boolean playing, tempPlaying, useSubdivisions, beatModeVibrate, isCountingIn;
-  private boolean showElapsed, resetElapsed, resetTimer;
+  private boolean showElapsed, resetElapsed, resetTimer, sustainedPerformance;
   private boolean alwaysVibrate, incrementalIncrease, flashScreen, keepAwake;
   private boolean neverStartedWithGain = true;
 
@@ -74,9 +110,32 @@ public class MetronomeUtil {
     this.context = context;
     this.fromService = fromService;
 
-    sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+    sharedPrefs = new PrefsUtil(context).checkForMigrations().getSharedPrefs();
+    profileUtil = new OutputProfileUtil(sharedPrefs);
+    exportUtil = new ExportUtil(context);
+    customSoundUtil = new CustomSoundUtil(context);
+    audioThread = new AudioThreadUtil(context, "metronome_audio");
+
+    audioUtil = new AudioUtil(context, new AudioListener() {
+      @Override
+      public void onAudioStop() {
+        stop();
+      }
 
-    audioUtil = new AudioUtil(context, this::stop);
+      @Override
+      public void onAudioTick(@NonNull Tick tick) {
+        performTick(tick);
+      }
+
+      @Override
+      public void onAudioRouteChanged(@NonNull String route) {
+        latency = profileUtil.getLatency(route);
+        // callbacks of pending ticks have been scheduled with the timing of the previous device
+        if (latencyHandler != null) {
+          rescheduleTicks();
+        }
+      }
+    });
     hapticUtil = new HapticUtil(context);
     shortcutUtil = new ShortcutUtil(context);
 
@@ -85,12 +144,12 @@ public class MetronomeUtil {
   }
 
   public void setToPreferences() {
-    tempo = sharedPrefs.getInt(PREF.TEMPO, DEF.TEMPO);
+    tempo = sharedPrefs.getFloat(PREF.TEMPO, DEF.TEMPO);
     beats = sharedPrefs.getString(PREF.BEATS, DEF.BEATS).split(",");
     subdivisions = sharedPrefs.getString(PREF.SUBDIVISIONS, DEF.SUBDIVISIONS).split(",");
     useSubdivisions = sharedPrefs.getBoolean(PREF.USE_SUBS, DEF.USE_SUBS);
     countIn = sharedPrefs.getInt(PREF.COUNT_IN, DEF.COUNT_IN);
-    latency = sharedPrefs.getLong(PREF.LATENCY, DEF.LATENCY);
+    latency = profileUtil.getLatency(audioUtil.getRoute());
     incrementalAmount = sharedPrefs.getInt(PREF.INCREMENTAL_AMOUNT, DEF.INCREMENTAL_AMOUNT);
     incrementalIncrease = sharedPrefs.getBoolean(
         PREF.INCREMENTAL_INCREASE, DEF.INCREMENTAL_INCREASE
@@ -105,10 +164,16 @@ public class MetronomeUtil {
     resetTimer = sharedPrefs.getBoolean(PREF.RESET_TIMER, DEF.RESET_TIMER);
     flashScreen = sharedPrefs.getBoolean(PREF.FLASH_SCREEN, DEF.FLASH_SCREEN);
     keepAwake = sharedPrefs.getBoolean(PREF.KEEP_AWAKE, DEF.KEEP_AWAKE);
+    sustainedPerformance = sharedPrefs.getBoolean(
+        PREF.SUSTAINED_PERFORMANCE, DEF.SUSTAINED_PERFORMANCE
+    );
+    updateAudioPattern();
 
     setSound(sharedPrefs.getString(PREF.SOUND, DEF.SOUND));
     setIgnoreFocus(sharedPrefs.getBoolean(PREF.IGNORE_FOCUS, DEF.IGNORE_FOCUS));
+    setLowLatency(sharedPrefs.getBoolean(PREF.LOW_LATENCY, DEF.LOW_LATENCY));
     setGain(sharedPrefs.getInt(PREF.GAIN, DEF.GAIN));
+    updateTickLevels();
     setBeatModeVibrate(sharedPrefs.getBoolean(PREF.BEAT_MODE_VIBRATE, DEF.BEAT_MODE_VIBRATE));
   }
 
@@ -116,17 +181,16 @@ public class MetronomeUtil {
     if (!fromService) {
       return;
     }
-    if (audioThread == null || !audioThread.isAlive()) {
-      audioThread = new HandlerThread("metronome_audio");
-      audioThread.start();
+    if (!audioThread.isAlive()) {
       removeHandlerCallbacks();
-      tickHandler = new Handler(audioThread.getLooper());
+      tickHandler = audioThread.start();
     }
     if (callbackThread == null || !callbackThread.isAlive()) {
-      callbackThread = new HandlerThread("metronome_callback");
+      // visual and haptic callbacks are timed, so they must not wait behind the UI
+      callbackThread = new HandlerThread("metronome_callback", Process.THREAD_PRIORITY_DISPLAY);
       callbackThread.start();
       removeHandlerCallbacks();
-      latencyHandler = new Handler(callbackThread.getLooper());
+      latencyHandler = new Handler(callbackThread.getLooper(), this::handleTickMessage);
       countInHandler = new Handler(callbackThread.getLooper());
       incrementalHandler = new Handler(callbackThread.getLooper());
       elapsedHandler = new Handler(callbackThread.getLooper());
@@ -163,6 +227,7 @@ public class MetronomeUtil {
     tempo = 80;
     beats = DEF.BEATS.split(",");
     subdivisions = DEF.SUBDIVISIONS.split(",");
+    updateAudioPattern();
     alwaysVibrate = true;
     countIn = 0;
     incrementalAmount = 0;
@@ -172,25 +237,123 @@ public class MetronomeUtil {
     start(false);
   }
 
+  /**
+   * Plays the latency calibration and records it with the microphone to measure the latency of
+   * the audio output. The result is saved as latency and passed to the listener, afterwards the
+   * previous playing state and preferences are restored. Requires the permission to record audio.
+   */
+  public void startLatencyCalibration(@NonNull OnCalibratedListener listener) {
+    if (calibrationUtil != null) {
+      return;
+    }
+    savePlayingState();
+    CalibrationUtil calibrationUtil = new CalibrationUtil(audioUtil.getSampleRate());
+    this.calibrationUtil = calibrationUtil;
+    calibrationUtil.start(new OnCalibratedListener() {
+      @Override
+      public void onCalibrated(long latency) {
+        stopLatencyCalibration();
+        setLatency(latency);
+        listener.onCalibrated(latency);
+      }
+
+      @Override
+      public void onCalibrationFailed() {
+        stopLatencyCalibration();
+        listener.onCalibrationFailed();
+      }
+    });
+    setUpLatencyCalibration();
+  }
+
+  public void stopLatencyCalibration() {
+    if (calibrationUtil == null) {
+      return;
+    }
+    calibrationUtil.cancel();
+    calibrationUtil = null;
+    // playback of the calibration ends first, so a restart is set up from the preferences again
+    stop();
+    setToPreferences();
+    restorePlayingState();
+  }
+
+  public boolean isCalibratingLatency() {
+    return calibrationUtil != null;
+  }
+
+  /**
+   * Renders the current settings as click track to a WAV file: the pattern with count-in and
+   * incremental tempo change in bars, as long as the timer or a few minutes without timer.
+   */
+  public void exportClickTrack(@NonNull Uri uri, @NonNull OnExportedListener listener) {
+    if (exportUtil.isRunning()) {
+      return;
+    }
+    long barInterval = Math.max(1, Timing.getBarsInterval(tempo, getBeatsCount(), 1));
+    int bars;
+    if (!isTimerActive()) {
+      bars = (int) Math.ceil(EXPORT_DURATION_DEFAULT / (double) barInterval);
+    } else if (timerUnit.equals(UNIT.BARS)) {
+      bars = timerDuration;
+    } else {
+      bars = (int) Math.ceil(getTimerInterval() / (double) barInterval);
+    }
+    ClickTrack track = new ClickTrack(new Pattern(tempo, beats, getSubdivisions()), countIn, bars);
+    if (isIncrementalActive() && incrementalUnit.equals(UNIT.BARS)) {
+      track.setIncremental(incrementalAmount, incrementalInterval, incrementalIncrease);
+    }
+    OfflineRenderer renderer = new OfflineRenderer(audioUtil.getSampleRate(), track);
+    renderer.setSounds(
+        sharedPrefs.getString(PREF.SOUND, DEF.SOUND),
+        audioUtil.getTickSound(TickType.ID_NORMAL),
+        audioUtil.getTickSound(TickType.ID_STRONG),
+        audioUtil.getTickSound(TickType.ID_SUB)
+    );
+    renderer.setGain(GainStage.dbToLinear(getGain()));
+    renderer.setTickLevels(
+        GainStage.dbToLinear(getTickLevel(TICK_TYPE.STRONG)),
+        GainStage.dbToLinear(getTickLevel(TICK_TYPE.NORMAL)),
+        GainStage.dbToLinear(getTickLevel(TICK_TYPE.SUB))
+    );
+    exportUtil.export(renderer, uri, listener);
+  }
+
+  public boolean isExporting() {
+    return exportUtil.isRunning();
+  }
+
   public void destroy() {
+    if (calibrationUtil != null) {
+      calibrationUtil.cancel();
+    }
     listeners.clear();
+    updateTickListeners();
+    audioUtil.destroy();
     if (fromService) {
       removeHandlerCallbacks();
-      audioThread.quitSafely();
+      audioThread.quit();
       callbackThread.quit();
     }
   }
 
   public void addListener(MetronomeListener listener) {
     listeners.add(listener);
+    updateTickListeners();
   }
 
   public void addListeners(Set<MetronomeListener> listeners) {
     this.listeners.addAll(listeners);
+    updateTickListeners();
   }
 
   public void removeListener(MetronomeListener listener) {
     listeners.remove(listener);
+    updateTickListeners();
+  }
+
+  private void updateTickListeners() {
+    tickListeners = listeners.toArray(new MetronomeListener[0]);
   }
 
   public Set<MetronomeListener> getListeners() {
@@ -225,22 +388,8 @@ public class MetronomeUtil {
     }
 
     playing = true;
-    audioUtil.play();
-    tickIndex = 0;
-    tickHandler.post(new Runnable() {
-      @Override
-      public void run() {
-        if (isPlaying()) {
-          tickHandler.postDelayed(this, getInterval() / getSubdivisionsCount());
-          Tick tick = new Tick(
-              tickIndex, getCurrentBeat(), getCurrentSubdivision(), getCurrentTickType()
-          );
-          performTick(tick);
-          audioUtil.tick(tick, tempo, getSubdivisionsCount());
-          tickIndex++;
-        }
-      }
-    });
+    hasPostedTicks = false;
+    audioUtil.play(audioThread);
 
     isCountingIn = isCountInActive();
     countInHandler.postDelayed(() -> {
@@ -290,9 +439,23 @@ public class MetronomeUtil {
     return playing;
   }
 
+  /**
+   * Prepares the audio output in advance, so the first tick is played right after start.
+   */
+  public void warmUpAudio() {
+    if (fromService && !isPlaying()) {
+      audioUtil.warmUp();
+    }
+  }
+
+  public void releaseIdleAudio() {
+    audioUtil.releaseIdleTrack();
+  }
+
   public void setBeats(String[] beats) {
     this.beats = beats;
     sharedPrefs.edit().putString(PREF.BEATS, String.join(",", beats)).apply();
+    updateAudioPattern();
     if (isTimerActive() && timerUnit.equals(UNIT.BARS)) {
       updateTimerHandler(isPlaying() ? 0 : timerProgress, true);
     }
@@ -332,6 +495,7 @@ public class MetronomeUtil {
 
   public void setSubdivisions(String[] subdivisions) {
     this.subdivisions = subdivisions;
+    updateAudioPattern();
     sharedPrefs.edit()
         .putString(PREF.SUBDIVISIONS, String.join(",", getSubdivisions()))
         .apply();
@@ -373,6 +537,7 @@ public class MetronomeUtil {
 
   public void setSubdivisionsUsed(boolean used) {
     useSubdivisions = used;
+    updateAudioPattern();
     sharedPrefs.edit().putBoolean(PREF.USE_SUBS, used).apply();
   }
 
@@ -381,91 +546,99 @@ public class MetronomeUtil {
   }
 
   public void setSwing3() {
-    setSubdivisions(String.join(
-        ",", TICK_TYPE.MUTED, TICK_TYPE.MUTED, TICK_TYPE.NORMAL).split(","));
+    setSubdivisions(new String[]{TICK_TYPE.MUTED, TICK_TYPE.MUTED, TICK_TYPE.NORMAL});
   }
 
   public boolean isSwing3() {
-    String triplet = String.join(",", TICK_TYPE.MUTED, TICK_TYPE.MUTED, TICK_TYPE.SUB);
-    String tripletAlt = String.join(
-        ",", TICK_TYPE.MUTED, TICK_TYPE.MUTED, TICK_TYPE.NORMAL
-    );
-    String subdivisions = String.join(",", getSubdivisions());
-    return subdivisions.equals(triplet) || subdivisions.equals(tripletAlt);
+    return isSwing(3, 2);
   }
 
   public void setSwing5() {
-    setSubdivisions(String.join(
-        ",",
+    setSubdivisions(new String[]{
         TICK_TYPE.MUTED, TICK_TYPE.MUTED, TICK_TYPE.MUTED, TICK_TYPE.NORMAL, TICK_TYPE.MUTED
-    ).split(","));
+    });
   }
 
   public boolean isSwing5() {
-    String quintuplet = String.join(
-        ",",
-        TICK_TYPE.MUTED, TICK_TYPE.MUTED, TICK_TYPE.MUTED, TICK_TYPE.SUB, TICK_TYPE.MUTED
-    );
-    String quintupletAlt = String.join(
-        ",",
-        TICK_TYPE.MUTED, TICK_TYPE.MUTED, TICK_TYPE.MUTED, TICK_TYPE.NORMAL, TICK_TYPE.MUTED
-    );
-    String subdivisions = String.join(",", getSubdivisions());
-    return subdivisions.equals(quintuplet) || subdivisions.equals(quintupletAlt);
+    return isSwing(5, 3);
   }
 
   public void setSwing7() {
-    setSubdivisions(String.join(
-        ",",
+    setSubdivisions(new String[]{
         TICK_TYPE.MUTED, TICK_TYPE.MUTED, TICK_TYPE.MUTED, TICK_TYPE.MUTED,
         TICK_TYPE.NORMAL, TICK_TYPE.MUTED, TICK_TYPE.MUTED
-    ).split(","));
+    });
   }
 
   public boolean isSwing7() {
-    String septuplet = String.join(
-        ",",
-        TICK_TYPE.MUTED, TICK_TYPE.MUTED, TICK_TYPE.MUTED, TICK_TYPE.MUTED,
-        TICK_TYPE.SUB, TICK_TYPE.MUTED, TICK_TYPE.MUTED
-    );
-    String septupletAlt = String.join(
-        ",",
-        TICK_TYPE.MUTED, TICK_TYPE.MUTED, TICK_TYPE.MUTED, TICK_TYPE.MUTED,
-        TICK_TYPE.NORMAL, TICK_TYPE.MUTED, TICK_TYPE.MUTED
-    );
-    String subdivisions = String.join(",", getSubdivisions());
-    return subdivisions.equals(septuplet) || subdivisions.equals(septupletAlt);
+    return isSwing(7, 4);
+  }
+
+  /**
+   * Returns whether the subdivisions are muted except for a normal or sub tick at the position.
+   */
+  private boolean isSwing(int count, int position) {
+    if (!useSubdivisions || subdivisions.length != count) {
+      return false;
+    }
+    for (int i = 0; i < count; i++) {
+      String tickType = subdivisions[i];
+      boolean matches = i == position
+          ? tickType.equals(TICK_TYPE.NORMAL) || tickType.equals(TICK_TYPE.SUB)
+          : tickType.equals(TICK_TYPE.MUTED);
+      if (!matches) {
+        return false;
+      }
+    }
+    return true;
   }
 
   public boolean isSwingActive() {
     return isSwing3() || isSwing5() || isSwing7();
   }
 
-  public void setTempo(int tempo) {
+  public void setTempo(float tempo) {
     if (this.tempo != tempo) {
       this.tempo = tempo;
-      sharedPrefs.edit().putInt(PREF.TEMPO, tempo).apply();
+      updateAudioPattern();
+      sharedPrefs.edit().putFloat(PREF.TEMPO, tempo).apply();
       if (isTimerActive() && timerUnit.equals(UNIT.BARS)) {
         updateTimerHandler(false);
       }
     }
   }
 
-  public int getTempo() {
+  public float getTempo() {
     return tempo;
   }
 
+  public static String getTempoString(float tempo) {
+    if (tempo == (int) tempo) {
+      return String.valueOf((int) tempo);
+    } else {
+      return String.format(Locale.ENGLISH, "%.1f", tempo);
+    }
+  }
+
   private void changeTempo(int change) {
-    int tempoOld = getTempo();
-    int tempoNew = tempoOld + change;
+    float tempoOld = getTempo();
+    float tempoNew = tempoOld + change;
     // setTempo will only be called by callback below, else we would break timer animation
     for (MetronomeListener listener : listeners) {
       listener.onMetronomeTempoChanged(tempoOld, tempoNew);
     }
   }
 
+  private void updateAudioPattern() {
+    audioUtil.setPattern(tempo, beats, getSubdivisions());
+  }
+
   public long getInterval() {
-    return 1000 * 60 / tempo;
+    return Math.round(getIntervalExact());
+  }
+
+  private double getIntervalExact() {
+    return Timing.getBeatInterval(tempo);
   }
 
   public void setSound(String sound) {
@@ -477,6 +650,92 @@ public class MetronomeUtil {
     return sharedPrefs.getString(PREF.SOUND, DEF.SOUND);
   }
 
+  /**
+   * Sets the pitch of synthesized ticks in semitones, relative to the default of the tick type.
+   */
+  public void setSynthPitch(String tickType, int pitch) {
+    setSynthParameter(PREF.SYNTH_PITCH, tickType, pitch);
+  }
+
+  public int getSynthPitch(String tickType) {
+    return sharedPrefs.getInt(SoundBank.getSynthPref(PREF.SYNTH_PITCH, tickType), DEF.SYNTH_PITCH);
+  }
+
+  /**
+   * Sets the time in milliseconds until synthesized ticks of the type have faded out.
+   */
+  public void setSynthDecay(String tickType, int decay) {
+    setSynthParameter(PREF.SYNTH_DECAY, tickType, decay);
+  }
+
+  public int getSynthDecay(String tickType) {
+    return sharedPrefs.getInt(SoundBank.getSynthPref(PREF.SYNTH_DECAY, tickType), DEF.SYNTH_DECAY);
+  }
+
+  /**
+   * Sets the amount of upper partials of synthesized ticks of the type in percent.
+   */
+  public void setSynthBrightness(String tickType, int brightness) {
+    setSynthParameter(PREF.SYNTH_BRIGHTNESS, tickType, brightness);
+  }
+
+  public int getSynthBrightness(String tickType) {
+    return sharedPrefs.getInt(
+        SoundBank.getSynthPref(PREF.SYNTH_BRIGHTNESS, tickType), DEF.SYNTH_BRIGHTNESS
+    );
+  }
+
+  private void setSynthParameter(String pref, String tickType, int value) {
+    sharedPrefs.edit().putInt(SoundBank.getSynthPref(pref, tickType), value).apply();
+    // renders the synthesized ticks again, a sample set is not affected
+    audioUtil.setSound(getSound());
+  }
+
+  /**
+   * Sets the level of the tick type in dB, relative to the other tick types.
+   */
+  public void setTickLevel(String tickType, int level) {
+    sharedPrefs.edit().putInt(SoundBank.getSynthPref(PREF.TICK_LEVEL, tickType), level).apply();
+    updateTickLevels();
+  }
+
+  public int getTickLevel(String tickType) {
+    return sharedPrefs.getInt(SoundBank.getSynthPref(PREF.TICK_LEVEL, tickType), DEF.TICK_LEVEL);
+  }
+
+  private void updateTickLevels() {
+    audioUtil.setTickLevels(
+        GainStage.dbToLinear(getTickLevel(TICK_TYPE.STRONG)),
+        GainStage.dbToLinear(getTickLevel(TICK_TYPE.NORMAL)),
+        GainStage.dbToLinear(getTickLevel(TICK_TYPE.SUB))
+    );
+  }
+
+  /**
+   * Decodes the audio file and uses it as custom sound for the tick type from now on.
+   */
+  public void importCustomSound(
+      @NonNull Uri uri, String tickType, @NonNull OnImportedListener listener
+  ) {
+    customSoundUtil.importSound(uri, tickType, audioUtil.getSampleRate(), new OnImportedListener() {
+      @Override
+      public void onImported() {
+        // loads the imported sample, other sound sets are not affected
+        audioUtil.setSound(getSound());
+        listener.onImported();
+      }
+
+      @Override
+      public void onImportFailed() {
+        listener.onImportFailed();
+      }
+    });
+  }
+
+  public boolean hasCustomSound(String tickType) {
+    return customSoundUtil.getSource(tickType) != null;
+  }
+
   public void setBeatModeVibrate(boolean vibrate) {
     if (!hapticUtil.hasVibrator()) {
       vibrate = false;
@@ -507,7 +766,7 @@ public class MetronomeUtil {
 
   public void setLatency(long offset) {
     latency = offset;
-    sharedPrefs.edit().putLong(PREF.LATENCY, offset).apply();
+    profileUtil.setLatency(audioUtil.getRoute(), offset);
   }
 
   public long getLatency() {
@@ -523,6 +782,32 @@ public class MetronomeUtil {
     return audioUtil.getIgnoreFocus();
   }
 
+  /**
+   * Returns how closely the audible ticks of the current or last playback followed the schedule.
+   */
+  public Stats getTimingStats() {
+    return audioUtil.getTimingStats();
+  }
+
+  /**
+   * Copies the tick passed to the listeners with the given sequence number into the given tick
+   * and returns it, or null if its slot has been reused already. Lets listeners hand ticks to
+   * other threads by their sequence number.
+   */
+  @Nullable
+  public Tick getTick(int sequence, @NonNull Tick target) {
+    return audioUtil.getTick(sequence, target);
+  }
+
+  public void setLowLatency(boolean lowLatency) {
+    audioUtil.setLowLatency(lowLatency);
+    sharedPrefs.edit().putBoolean(PREF.LOW_LATENCY, lowLatency).apply();
+  }
+
+  public boolean getLowLatency() {
+    return audioUtil.getLowLatency();
+  }
+
   public void setGain(int gain) {
     audioUtil.setGain(gain);
     sharedPrefs.edit().putInt(PREF.GAIN, gain).apply();
@@ -554,6 +839,19 @@ public class MetronomeUtil {
     return keepAwake;
   }
 
+  /**
+   * Sets whether the performance should be kept steady while playing, applied by the activity as
+   * long as it is visible.
+   */
+  public void setSustainedPerformance(boolean sustained) {
+    sustainedPerformance = sustained;
+    sharedPrefs.edit().putBoolean(PREF.SUSTAINED_PERFORMANCE, sustained).apply();
+  }
+
+  public boolean getSustainedPerformance() {
+    return sustainedPerformance;
+  }
+
   public void setCountIn(int bars) {
     countIn = bars;
     sharedPrefs.edit().putInt(PREF.COUNT_IN, bars).apply();
@@ -572,7 +870,7 @@ public class MetronomeUtil {
   }
 
   public long getCountInInterval() {
-    return getInterval() * getBeatsCount() * countIn;
+    return Timing.getBarsInterval(tempo, getBeatsCount(), countIn);
   }
 
   public void setIncrementalAmount(int bpm) {
@@ -726,8 +1024,7 @@ public class MetronomeUtil {
         factor = 60000L;
         break;
       default:
-        factor = getInterval() * getBeatsCount();
-        break;
+        return Timing.getBarsInterval(tempo, getBeatsCount(), timerDuration);
     }
     return factor * timerDuration;
   }
@@ -805,9 +1102,9 @@ public class MetronomeUtil {
     } else if (startAtFirstBeat) {
       // set timer progress on start of this bar
       long progressInterval = (long) (getTimerProgress() * getTimerInterval());
-      long barInterval = getInterval() * getBeatsCount();
+      double barInterval = getIntervalExact() * getBeatsCount();
       int progressBarCount = (int) (progressInterval / barInterval);
-      long progressIntervalFullBars = progressBarCount * barInterval;
+      long progressIntervalFullBars = (long) (progressBarCount * barInterval);
       timerProgress = (float) progressIntervalFullBars / getTimerInterval();
     }
 
@@ -874,12 +1171,12 @@ public class MetronomeUtil {
         int minutes = seconds / 60;
         return String.format(Locale.ENGLISH, "%02d:%02d", minutes, seconds % 60);
       default:
-        long barInterval = getInterval() * getBeatsCount();
+        double barInterval = getIntervalExact() * getBeatsCount();
         int progressBarCount = Math.min((int) (elapsedTime / barInterval), timerDuration - 1);
 
-        long elapsedTimeFullBars = progressBarCount * barInterval;
-        long remaining = elapsedTime - elapsedTimeFullBars;
-        int beatCount = Math.min((int) (remaining / getInterval()), getBeatsCount() - 1);
+        double elapsedTimeFullBars = progressBarCount * barInterval;
+        double remaining = elapsedTime - elapsedTimeFullBars;
+        int beatCount = Math.min((int) (remaining / getIntervalExact()), getBeatsCount() - 1);
 
         String format = getBeatsCount() < 10 ? "%d.%01d" : "%d.%02d";
         return String.format(Locale.ENGLISH, format, progressBarCount + 1, beatCount + 1);
@@ -903,61 +1200,107 @@ public class MetronomeUtil {
   }
 
   private void performTick(Tick tick) {
-    latencyHandler.postDelayed(() -> {
-      for (MetronomeListener listener : listeners) {
-        listener.onMetronomePreTick(tick);
-      }
-    }, Math.max(0, latency - Constants.BEAT_ANIM_OFFSET));
-    latencyHandler.postDelayed(() -> {
-      if (beatModeVibrate || alwaysVibrate) {
-        switch (tick.type) {
-          case TICK_TYPE.STRONG:
-            hapticUtil.heavyClick();
-            break;
-          case TICK_TYPE.SUB:
-            hapticUtil.tick();
-            break;
-          case TICK_TYPE.MUTED:
-            break;
-          default:
-            hapticUtil.click();
-        }
-      }
-      for (MetronomeListener listener : listeners) {
-        listener.onMetronomeTick(tick);
-      }
-    }, latency);
-
-    boolean isBeat = tick.subdivision == 1;
-    boolean isFirstBeat = ((tick.index / getSubdivisionsCount()) % getBeatsCount()) == 0;
-    if (isBeat && isFirstBeat) {
-      long beatIndex = tick.index / getSubdivisionsCount();
-      long barIndex = beatIndex / getBeatsCount();
-      boolean isCountIn = barIndex < getCountIn();
-      if (isIncrementalActive() && incrementalUnit.equals(UNIT.BARS) && !isCountIn) {
-        barIndex = barIndex - getCountIn();
-        if (barIndex >= incrementalInterval && barIndex % incrementalInterval == 0) {
-          changeTempo(incrementalAmount * (incrementalIncrease ? 1 : -1));
-        }
+    // follows the sound through buffer size and route changes, the user latency is only a trim
+    long tickDelay = audioUtil.getTickDelay(tick);
+    long delay = tickDelay / 1000000L + latency;
+    CalibrationUtil calibrationUtil = this.calibrationUtil;
+    if (calibrationUtil != null) {
+      calibrationUtil.addTick(System.nanoTime() + tickDelay, audioUtil.getTickSound(tick.typeId));
+    }
+    if (!hasPostedTicks) {
+      hasPostedTicks = true;
+      preTickSequence = tick.sequence - TickRing.SEQUENCE_STEP;
+      tickSequence = tick.sequence - TickRing.SEQUENCE_STEP;
+    }
+    postedSequence = tick.sequence;
+    postTickCallbacks(tick, delay);
+
+    if (isIncrementalActive() && incrementalUnit.equals(UNIT.BARS)) {
+      boolean isIncrementalBar = Timing.isIncrementalBar(
+          tick, getBeatsCount(), getSubdivisionsCount(), getCountIn(), incrementalInterval
+      );
+      if (isIncrementalBar) {
+        changeTempo(incrementalAmount * (incrementalIncrease ? 1 : -1));
       }
     }
   }
 
-  private int getCurrentBeat() {
-    return (int) ((tickIndex / getSubdivisionsCount()) % beats.length) + 1;
+  /**
+   * Posts the callbacks of the tick with the given delay in milliseconds until it is heard. The
+   * callbacks look the tick up by its sequence number, the slot is reused by the engine.
+   */
+  private void postTickCallbacks(Tick tick, long delay) {
+    latencyHandler.sendMessageDelayed(
+        latencyHandler.obtainMessage(MSG_PRE_TICK, tick.sequence, 0),
+        Math.max(0, delay - Constants.BEAT_ANIM_OFFSET)
+    );
+    latencyHandler.sendMessageDelayed(
+        latencyHandler.obtainMessage(MSG_TICK, tick.sequence, 0), Math.max(0, delay)
+    );
   }
 
-  private int getCurrentSubdivision() {
-    return (int) (tickIndex % getSubdivisionsCount()) + 1;
+  /**
+   * Moves the callbacks of the ticks which have not been heard yet to the timing of the new
+   * route. Called on the audio thread like performTick(), so the ring and sink are up to date.
+   */
+  private void rescheduleTicks() {
+    latencyHandler.removeMessages(MSG_PRE_TICK);
+    latencyHandler.removeMessages(MSG_TICK);
+    if (!hasPostedTicks) {
+      return;
+    }
+    // callbacks dispatched in the meantime are skipped by handleTickMessage()
+    int last = postedSequence;
+    int step = TickRing.SEQUENCE_STEP;
+    for (int sequence = tickSequence + step; sequence - last <= 0; sequence += step) {
+      Tick tick = audioUtil.getTick(sequence, rescheduleTick);
+      if (tick != null) {
+        postTickCallbacks(tick, audioUtil.getTickDelay(tick) / 1000000L + latency);
+      }
+    }
   }
 
-  private String getCurrentTickType() {
-    int subdivisionsCount = getSubdivisionsCount();
-    if ((tickIndex % subdivisionsCount) == 0) {
-      return beats[(int) ((tickIndex / subdivisionsCount) % beats.length)];
-    } else {
-      return subdivisions[(int) (tickIndex % subdivisionsCount)];
+  /**
+   * Dispatches the delayed tick callbacks on the callback thread without allocating.
+   */
+  private boolean handleTickMessage(@NonNull Message msg) {
+    Tick tick = audioUtil.getTick(msg.arg1, callbackTick);
+    if (tick == null) {
+      return true; // slot has already been reused, the callback is far too late anyway
+    }
+    MetronomeListener[] listeners = tickListeners;
+    if (msg.what == MSG_PRE_TICK) {
+      if (msg.arg1 - preTickSequence <= 0) {
+        return true; // already dispatched before the callbacks were rescheduled
+      }
+      preTickSequence = msg.arg1;
+      for (MetronomeListener listener : listeners) {
+        listener.onMetronomePreTick(tick);
+      }
+      return true;
+    }
+    if (msg.arg1 - tickSequence <= 0) {
+      return true;
+    }
+    tickSequence = msg.arg1;
+    if (beatModeVibrate || alwaysVibrate) {
+      switch (tick.typeId) {
+        case TickType.ID_STRONG:
+          hapticUtil.heavyClick();
+          break;
+        case TickType.ID_SUB:
+          hapticUtil.tick();
+          break;
+        case TickType.ID_MUTED:
+          break;
+        default:
+          hapticUtil.click();
+      }
+    }
+    for (MetronomeListener listener : listeners) {
+      listener.onMetronomeTick(tick);
     }
+    return true;
   }
 
   public interface MetronomeListener {
@@ -965,7 +1308,7 @@ public class MetronomeUtil {
     void onMetronomeStop();
     void onMetronomePreTick(Tick tick);
     void onMetronomeTick(Tick tick);
-    void onMetronomeTempoChanged(int tempoOld, int tempoNew);
+    void onMetronomeTempoChanged(float tempoOld, float tempoNew);
     void onElapsedTimeSecondsChanged();
     void onMetronomeTimerStarted();
     void onTimerSecondsChanged();
@@ -978,34 +1321,11 @@ public class MetronomeUtil {
     public void onMetronomeStop() {}
     public void onMetronomePreTick(Tick tick) {}
     public void onMetronomeTick(Tick tick) {}
-    public void onMetronomeTempoChanged(int tempoOld, int tempoNew) {}
+    public void onMetronomeTempoChanged(float tempoOld, float tempoNew) {}
     public void onElapsedTimeSecondsChanged() {}
     public void onMetronomeTimerStarted() {}
     public void onTimerSecondsChanged() {}
     public void onMetronomeConnectionMissing() {}
     public void onPermissionMissing() {}
   }
-
-  public static class Tick {
-    public final long index;
-    public final int beat, subdivision;
-    @NonNull
-    public final String type;
-
-    public Tick(long index, int beat, int subdivision, @NonNull String type) {
-      this.index = index;
-      this.beat = beat;
-      this.subdivision = subdivision;
-      this.type = type;
-    }
-
-    @NonNull
-    @Override
-    public String toString() {
-      return "Tick{index = " + index +
-          ", beat=" + beat +
-          ", sub=" + subdivision +
-          ", type=" + type + '}';
-    }
-  }
-}
\ No newline at end of file
+}
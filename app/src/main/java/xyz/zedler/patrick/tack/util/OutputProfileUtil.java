@@ -0,0 +1,91 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.util;
+
+import android.content.SharedPreferences;
+import android.media.AudioDeviceInfo;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import xyz.zedler.patrick.tack.Constants.DEF;
+import xyz.zedler.patrick.tack.Constants.PREF;
+
+/**
+ * Latency and buffer size per audio output device, so switching between speaker, headphones and
+ * Bluetooth does not need a new calibration every time.
+ */
+public class OutputProfileUtil {
+
+  // used as long as the output device is unknown, e.g. before Android 7
+  public static final String ROUTE_DEFAULT = "default";
+
+  private final SharedPreferences sharedPrefs;
+
+  public OutputProfileUtil(@NonNull SharedPreferences sharedPrefs) {
+    this.sharedPrefs = sharedPrefs;
+  }
+
+  /**
+   * Returns a key for the output device which stays the same across reconnections. Device IDs
+   * change with every connection, so the type and product name are used instead.
+   */
+  @NonNull
+  public static String getRoute(@Nullable AudioDeviceInfo device) {
+    if (device == null || VERSION.SDK_INT < VERSION_CODES.M) {
+      return ROUTE_DEFAULT;
+    }
+    return device.getType() + ":" + device.getProductName();
+  }
+
+  /**
+   * Returns the latency of the route, falls back to the latency set without a known route.
+   */
+  public long getLatency(@NonNull String route) {
+    long latency = sharedPrefs.getLong(PREF.LATENCY, DEF.LATENCY);
+    return sharedPrefs.getLong(getKey(PREF.LATENCY, route), latency);
+  }
+
+  public void setLatency(@NonNull String route, long latency) {
+    SharedPreferences.Editor editor = sharedPrefs.edit();
+    if (route.equals(ROUTE_DEFAULT)) {
+      editor.putLong(PREF.LATENCY, latency);
+    } else {
+      editor.putLong(getKey(PREF.LATENCY, route), latency);
+    }
+    editor.apply();
+  }
+
+  /**
+   * Returns the buffer size in frames which played the route without underruns, or 0 if it is
+   * not known yet.
+   */
+  public int getBufferSize(@NonNull String route) {
+    return sharedPrefs.getInt(getKey(PREF.BUFFER_SIZE, route), 0);
+  }
+
+  public void setBufferSize(@NonNull String route, int bufferSize) {
+    sharedPrefs.edit().putInt(getKey(PREF.BUFFER_SIZE, route), bufferSize).apply();
+  }
+
+  private static String getKey(String pref, String route) {
+    return pref + "|" + route;
+  }
+}
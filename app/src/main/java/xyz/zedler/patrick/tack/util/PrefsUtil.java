@@ -28,6 +28,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import xyz.zedler.patrick.tack.Constants.DEF;
 import xyz.zedler.patrick.tack.Constants.PREF;
 
 public class PrefsUtil {
@@ -42,6 +43,8 @@ public class PrefsUtil {
 
   public PrefsUtil checkForMigrations() {
     migrateBookmarks();
+    migrateTempo();
+    migrateLatency();
     return this;
   }
 
@@ -78,6 +81,24 @@ public class PrefsUtil {
     }
   }
 
+  private void migrateTempo() {
+    if (sharedPrefs.contains(PREF.TEMPO)) {
+      try {
+        int tempo = sharedPrefs.getInt(PREF.TEMPO, (int) DEF.TEMPO);
+        sharedPrefs.edit().putFloat(PREF.TEMPO, tempo).apply();
+      } catch (ClassCastException ignored) {
+        // already stored as float for fractional tempo support
+      }
+    }
+  }
+
+  private void migrateLatency() {
+    // absolute latency, replaced by a trim on top of the measured output latency
+    if (sharedPrefs.contains("latency_offset")) {
+      sharedPrefs.edit().remove("latency_offset").apply();
+    }
+  }
+
   private void migrateString(String keyOld, String keyNew, String def) {
     if (sharedPrefs.contains(keyOld) && !sharedPrefs.contains(keyNew)) {
       SharedPreferences.Editor editor = sharedPrefs.edit();
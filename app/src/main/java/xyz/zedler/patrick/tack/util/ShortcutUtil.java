@@ -45,15 +45,17 @@ public class ShortcutUtil {
     }
   }
 
-  public void addShortcut(int tempo) {
+  public void addShortcut(float tempo) {
     if (isSupported() && !hasShortcut(tempo)) {
       manager.addDynamicShortcuts(Collections.singletonList(getShortcutInfo(tempo)));
     }
   }
 
-  public void removeShortcut(int tempo) {
+  public void removeShortcut(float tempo) {
     if (isSupported() && hasShortcut(tempo)) {
-      manager.removeDynamicShortcuts(Collections.singletonList(String.valueOf(tempo)));
+      manager.removeDynamicShortcuts(
+          Collections.singletonList(MetronomeUtil.getTempoString(tempo))
+      );
     }
   }
 
@@ -63,16 +65,16 @@ public class ShortcutUtil {
     }
   }
 
-  public void reportUsage(int tempo) {
+  public void reportUsage(float tempo) {
     if (isSupported() && hasShortcut(tempo)) {
-      manager.reportShortcutUsed(String.valueOf(tempo));
+      manager.reportShortcutUsed(MetronomeUtil.getTempoString(tempo));
     }
   }
 
-  private boolean hasShortcut(int tempo) {
+  private boolean hasShortcut(float tempo) {
     if (isSupported()) {
       for (ShortcutInfo info : manager.getDynamicShortcuts()) {
-        if (String.valueOf(tempo).equals(info.getId())) {
+        if (MetronomeUtil.getTempoString(tempo).equals(info.getId())) {
           return true;
         }
       }
@@ -81,9 +83,10 @@ public class ShortcutUtil {
   }
 
   @RequiresApi(api = VERSION_CODES.N_MR1)
-  private ShortcutInfo getShortcutInfo(int tempo) {
-    ShortcutInfo.Builder builder = new ShortcutInfo.Builder(context, String.valueOf(tempo));
-    builder.setShortLabel(context.getString(R.string.label_bpm_value, tempo));
+  private ShortcutInfo getShortcutInfo(float tempo) {
+    String tempoString = MetronomeUtil.getTempoString(tempo);
+    ShortcutInfo.Builder builder = new ShortcutInfo.Builder(context, tempoString);
+    builder.setShortLabel(context.getString(R.string.label_bpm_value, tempoString));
     builder.setIcon(Icon.createWithResource(context, R.mipmap.ic_shortcut));
     builder.setIntent(new Intent(context, ShortcutActivity.class)
         .setAction(ACTION.START)
@@ -0,0 +1,438 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.util;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.content.res.Resources.NotFoundException;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.RawRes;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.FloatBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import xyz.zedler.patrick.tack.Constants.DEF;
+import xyz.zedler.patrick.tack.Constants.PREF;
+import xyz.zedler.patrick.tack.Constants.SOUND;
+import xyz.zedler.patrick.tack.Constants.TICK_TYPE;
+import xyz.zedler.patrick.tack.R;
+import xyz.zedler.patrick.tack.core.ClickSynth;
+import xyz.zedler.patrick.tack.core.ClickSynth.Params;
+import xyz.zedler.patrick.tack.core.Resampler;
+import xyz.zedler.patrick.tack.core.WavDecoder;
+import xyz.zedler.patrick.tack.core.WavDecoder.Wav;
+
+/**
+ * Process-wide cache of decoded tick sounds. Every resource and pitch pair is decoded only once
+ * per output sample rate and shared between all sound sets and tick types using it. Synthesized
+ * sounds are rendered once per parameter set and output sample rate the same way, imported
+ * sounds are memory-mapped from their cache files.
+ */
+public class SoundBank implements ComponentCallbacks2 {
+
+  private static final String TAG = SoundBank.class.getSimpleName();
+
+  // accents of sounds without dedicated samples are pitched by an octave
+  private static final int PITCH_HIGH = 12;
+  private static final int PITCH_LOW = -12;
+  // recently used sound sets which are kept in memory and preloaded, the first one is selected
+  private static final int RECENT_COUNT = 3;
+  // base frequencies of synthesized sounds in Hz, pitched like the accents of the sample sets
+  private static final float SYNTH_PITCH_SINE = 880;
+  private static final float SYNTH_PITCH_WOOD = 1200;
+  private static final float SYNTH_PITCH_BELL = 1100;
+
+  private static SoundBank instance;
+
+  private final Context context;
+  private final SharedPreferences sharedPrefs;
+  private final CustomSoundUtil customSoundUtil;
+  private final Executor executor = Executors.newSingleThreadExecutor();
+  private final Map<String, FloatBuffer> samples = new HashMap<>();
+  private final LinkedList<String> recentSounds = new LinkedList<>();
+
+  public static synchronized SoundBank getInstance(@NonNull Context context) {
+    if (instance == null) {
+      instance = new SoundBank(context.getApplicationContext());
+      instance.context.registerComponentCallbacks(instance);
+    }
+    return instance;
+  }
+
+  private SoundBank(Context context) {
+    this.context = context;
+    sharedPrefs = new PrefsUtil(context).getSharedPrefs();
+    customSoundUtil = new CustomSoundUtil(context);
+  }
+
+  /**
+   * Returns the preference key of a synthesizer parameter for the tick type.
+   */
+  public static String getSynthPref(String pref, String tickType) {
+    return pref + "_" + tickType;
+  }
+
+  /**
+   * Passes the sound set to the listener, right away on the calling thread if it is already
+   * cached, otherwise on a background thread after it has been loaded. The other recently used
+   * sets are preloaded afterwards.
+   */
+  public void load(String sound, int sampleRate, @NonNull OnLoadedListener listener) {
+    SoundSet soundSet;
+    synchronized (this) {
+      recentSounds.remove(sound);
+      recentSounds.addFirst(sound);
+      while (recentSounds.size() > RECENT_COUNT) {
+        recentSounds.removeLast();
+      }
+      if (isSynthesized(sound) || sound.equals(SOUND.CUSTOM)) {
+        // clicks rendered with previous parameters or replaced imports are not needed anymore
+        retainRecentSounds(RECENT_COUNT);
+      }
+      soundSet = getCachedSoundSet(sound, sampleRate);
+    }
+    if (soundSet != null) {
+      listener.onLoaded(soundSet);
+    } else {
+      executor.execute(() -> listener.onLoaded(loadSoundSet(sound, sampleRate)));
+    }
+    executor.execute(() -> preloadRecentSounds(sampleRate));
+  }
+
+  private void preloadRecentSounds(int sampleRate) {
+    List<String> sounds;
+    synchronized (this) {
+      sounds = new ArrayList<>(recentSounds);
+    }
+    for (String sound : sounds) {
+      loadSoundSet(sound, sampleRate);
+    }
+  }
+
+  private synchronized SoundSet getCachedSoundSet(String sound, int sampleRate) {
+    Sample[] sampleInfos = getSamples(sound);
+    FloatBuffer[] data = new FloatBuffer[sampleInfos.length];
+    for (int i = 0; i < sampleInfos.length; i++) {
+      data[i] = samples.get(sampleInfos[i].getKey(sampleRate));
+      if (data[i] == null) {
+        return null;
+      }
+    }
+    return new SoundSet(getKey(sampleInfos), data[0], data[1], data[2]);
+  }
+
+  private SoundSet loadSoundSet(String sound, int sampleRate) {
+    Sample[] sampleInfos = getSamples(sound);
+    FloatBuffer[] data = new FloatBuffer[sampleInfos.length];
+    for (int i = 0; i < sampleInfos.length; i++) {
+      String key = sampleInfos[i].getKey(sampleRate);
+      synchronized (this) {
+        data[i] = samples.get(key);
+      }
+      if (data[i] == null) {
+        data[i] = loadSample(sampleInfos[i], sampleRate);
+        synchronized (this) {
+          samples.put(key, data[i]);
+        }
+      }
+    }
+    return new SoundSet(getKey(sampleInfos), data[0], data[1], data[2]);
+  }
+
+  private static String getKey(Sample[] samples) {
+    StringBuilder key = new StringBuilder();
+    for (Sample sample : samples) {
+      key.append(key.length() > 0 ? "," : "").append(sample.getId());
+    }
+    return key.toString();
+  }
+
+  @Override
+  public void onTrimMemory(int level) {
+    if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+      retainRecentSounds(1);
+    } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+      retainRecentSounds(RECENT_COUNT);
+    }
+  }
+
+  @Override
+  public void onLowMemory() {
+    retainRecentSounds(1);
+  }
+
+  @Override
+  public void onConfigurationChanged(@NonNull Configuration newConfig) {
+  }
+
+  /**
+   * Evicts all samples which are not used by the given number of most recently used sets.
+   */
+  private synchronized void retainRecentSounds(int count) {
+    while (recentSounds.size() > count) {
+      recentSounds.removeLast();
+    }
+    Set<String> ids = new HashSet<>();
+    for (String sound : recentSounds) {
+      for (Sample sample : getSamples(sound)) {
+        ids.add(sample.getId());
+      }
+    }
+    int evicted = 0;
+    Iterator<String> iterator = samples.keySet().iterator();
+    while (iterator.hasNext()) {
+      String key = iterator.next();
+      if (!ids.contains(key.substring(0, key.lastIndexOf('|')))) {
+        iterator.remove();
+        evicted++;
+      }
+    }
+    if (evicted > 0) {
+      Log.i(TAG, "retainRecentSounds: evicted " + evicted + " samples");
+    }
+  }
+
+  private FloatBuffer loadSample(Sample sample, int sampleRate) {
+    if (sample.synth != null) {
+      return FloatBuffer.wrap(ClickSynth.render(sample.synth, sampleRate));
+    } else if (sample.source != null) {
+      try {
+        return customSoundUtil.load(sample.source, sampleRate);
+      } catch (IOException | RuntimeException e) {
+        Log.e(TAG, "loadSample: could not load " + sample.source, e);
+        return loadSample(new Sample(R.raw.sine, sample.pitch), sampleRate);
+      }
+    }
+    try {
+      Wav wav = decodeWav(sample.resId);
+      return FloatBuffer.wrap(
+          Resampler.resample(wav.data, wav.sampleRate, sampleRate, sample.pitch)
+      );
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private Wav decodeWav(@RawRes int resId) throws IOException {
+    Resources resources = context.getResources();
+    try (
+        AssetFileDescriptor descriptor = resources.openRawResourceFd(resId);
+        FileInputStream stream = descriptor.createInputStream()
+    ) {
+      // channel starts at the offset of the resource inside the APK
+      return WavDecoder.decode(stream.getChannel());
+    } catch (NotFoundException e) {
+      // compressed resources cannot be opened as file descriptor
+      try (InputStream stream = resources.openRawResource(resId)) {
+        return WavDecoder.decode(Channels.newChannel(stream));
+      }
+    }
+  }
+
+  /**
+   * Returns the samples for the normal, strong and sub tick of the sound set.
+   */
+  private Sample[] getSamples(String sound) {
+    switch (sound) {
+      case SOUND.SYNTH_SINE:
+        return getSynthSamples(ClickSynth.WAVEFORM_SINE, SYNTH_PITCH_SINE);
+      case SOUND.SYNTH_WOOD:
+        return getSynthSamples(ClickSynth.WAVEFORM_WOOD, SYNTH_PITCH_WOOD);
+      case SOUND.SYNTH_BELL:
+        return getSynthSamples(ClickSynth.WAVEFORM_BELL, SYNTH_PITCH_BELL);
+      case SOUND.CUSTOM:
+        return new Sample[]{
+            getCustomSample(TICK_TYPE.NORMAL, 0),
+            getCustomSample(TICK_TYPE.STRONG, PITCH_HIGH),
+            getCustomSample(TICK_TYPE.SUB, PITCH_LOW)
+        };
+      case SOUND.WOOD:
+        return new Sample[]{
+            new Sample(R.raw.wood, 0),
+            new Sample(R.raw.wood, PITCH_HIGH),
+            new Sample(R.raw.wood, PITCH_LOW)
+        };
+      case SOUND.MECHANICAL:
+        return new Sample[]{
+            new Sample(R.raw.mechanical_tick, 0),
+            new Sample(R.raw.mechanical_ding, 0),
+            new Sample(R.raw.mechanical_knock, 0)
+        };
+      case SOUND.BEATBOXING_1:
+        return new Sample[]{
+            new Sample(R.raw.beatbox_snare1, 0),
+            new Sample(R.raw.beatbox_kick1, 0),
+            new Sample(R.raw.beatbox_hihat1, 0)
+        };
+      case SOUND.BEATBOXING_2:
+        return new Sample[]{
+            new Sample(R.raw.beatbox_snare2, 0),
+            new Sample(R.raw.beatbox_kick2, 0),
+            new Sample(R.raw.beatbox_hihat2, 0)
+        };
+      case SOUND.HANDS:
+        return new Sample[]{
+            new Sample(R.raw.hands_hit, 0),
+            new Sample(R.raw.hands_clap, 0),
+            new Sample(R.raw.hands_snap, 0)
+        };
+      case SOUND.FOLDING:
+        return new Sample[]{
+            new Sample(R.raw.folding_knock, 0),
+            new Sample(R.raw.folding_fold, 0),
+            new Sample(R.raw.folding_tap, 0)
+        };
+      default:
+        return new Sample[]{
+            new Sample(R.raw.sine, 0),
+            new Sample(R.raw.sine, PITCH_HIGH),
+            new Sample(R.raw.sine, PITCH_LOW)
+        };
+    }
+  }
+
+  /**
+   * Returns the imported sample of the tick type, or the accented sine if nothing was imported.
+   */
+  private Sample getCustomSample(String tickType, int accent) {
+    File source = customSoundUtil.getSource(tickType);
+    return source != null ? new Sample(source, accent) : new Sample(R.raw.sine, accent);
+  }
+
+  private Sample[] getSynthSamples(String waveform, float pitch) {
+    return new Sample[]{
+        new Sample(getSynthParams(waveform, pitch, TICK_TYPE.NORMAL, 0)),
+        new Sample(getSynthParams(waveform, pitch, TICK_TYPE.STRONG, PITCH_HIGH)),
+        new Sample(getSynthParams(waveform, pitch, TICK_TYPE.SUB, PITCH_LOW))
+    };
+  }
+
+  /**
+   * Returns the parameters set by the user for the tick type, the pitch is relative to the
+   * default pitch of the tick type.
+   */
+  private Params getSynthParams(String waveform, float pitch, String tickType, int accent) {
+    int semitones = accent + sharedPrefs.getInt(
+        getSynthPref(PREF.SYNTH_PITCH, tickType), DEF.SYNTH_PITCH
+    );
+    int decay = sharedPrefs.getInt(getSynthPref(PREF.SYNTH_DECAY, tickType), DEF.SYNTH_DECAY);
+    int brightness = sharedPrefs.getInt(
+        getSynthPref(PREF.SYNTH_BRIGHTNESS, tickType), DEF.SYNTH_BRIGHTNESS
+    );
+    return new Params(
+        waveform,
+        (float) (pitch * Math.pow(2, semitones / 12d)),
+        decay / 1000f,
+        brightness / 100f
+    );
+  }
+
+  public static boolean isSynthesized(String sound) {
+    return sound.equals(SOUND.SYNTH_SINE)
+        || sound.equals(SOUND.SYNTH_WOOD)
+        || sound.equals(SOUND.SYNTH_BELL);
+  }
+
+  private static class Sample {
+
+    final int resId;
+    final int pitch; // in semitones
+    final Params synth;
+    final File source;
+    // part of the id, so a sound imported again is never taken from the cache
+    final long lastModified;
+
+    Sample(@RawRes int resId, int pitch) {
+      this.resId = resId;
+      this.pitch = pitch;
+      synth = null;
+      source = null;
+      lastModified = 0;
+    }
+
+    Sample(@NonNull Params synth) {
+      resId = 0;
+      pitch = 0;
+      this.synth = synth;
+      source = null;
+      lastModified = 0;
+    }
+
+    Sample(@NonNull File source, int pitch) {
+      resId = 0;
+      // only used by the fallback if the source cannot be loaded
+      this.pitch = pitch;
+      synth = null;
+      this.source = source;
+      lastModified = source.lastModified();
+    }
+
+    String getId() {
+      if (synth != null) {
+        return "synth|" + synth.getKey();
+      } else if (source != null) {
+        return "custom|" + source.getName() + "|" + lastModified;
+      } else {
+        return resId + "|" + pitch;
+      }
+    }
+
+    String getKey(int sampleRate) {
+      return getId() + "|" + sampleRate;
+    }
+  }
+
+  public static class SoundSet {
+
+    // changes with the samples, even if the sound stays the same
+    public final String key;
+    public final FloatBuffer tickNormal, tickStrong, tickSub;
+
+    public SoundSet(
+        String key, FloatBuffer tickNormal, FloatBuffer tickStrong, FloatBuffer tickSub
+    ) {
+      this.key = key;
+      this.tickNormal = tickNormal;
+      this.tickStrong = tickStrong;
+      this.tickSub = tickSub;
+    }
+  }
+
+  public interface OnLoadedListener {
+    void onLoaded(@NonNull SoundSet soundSet);
+  }
+}
@@ -110,7 +110,7 @@ public class TempoTapUtil {
   }
 
   public void update() {
-    int tempo = getMetronomeUtil().getTempo();
+    float tempo = getMetronomeUtil().getTempo();
     setTempo(tempo, tempo);
     binding.textSwitcherTempoTapTempoTerm.setCurrentText(fragment.getTempoTerm(tempo));
     binding.cloverTempoTap.setReduceAnimations(fragment.isReduceAnimations());
@@ -134,14 +134,14 @@ public class TempoTapUtil {
     return enoughData;
   }
 
-  private void setTempo(int tempoOld, int tempoNew) {
+  private void setTempo(float tempoOld, float tempoNew) {
     getMetronomeUtil().setTempo(
         Math.min(Math.max(tempoNew, Constants.TEMPO_MIN), Constants.TEMPO_MAX)
     );
     if (binding == null) {
       return;
     }
-    binding.textTempoTapTempo.setText(String.valueOf(tempoNew));
+    binding.textTempoTapTempo.setText(MetronomeUtil.getTempoString(tempoNew));
     String termNew = fragment.getTempoTerm(tempoNew);
     if (!termNew.equals(fragment.getTempoTerm(tempoOld))) {
       boolean isFaster = tempoNew > tempoOld;
@@ -156,25 +156,26 @@ public class TempoTapUtil {
     fragment.setTempo(tempoNew);
   }
 
-  public int getTempo() {
+  public float getTempo() {
     return getTempo(getAverage());
   }
 
-  private int getTempo(long interval) {
+  private float getTempo(double interval) {
     if (interval > 0) {
-      return (int) (60000 / interval);
+      // round to one decimal place, the finest step shown in the tempo text
+      return Math.round(600000 / interval) / 10f;
     } else {
       return 0;
     }
   }
 
-  private long getAverage() {
+  private double getAverage() {
     long sum = 0;
     for (long interval : intervals) {
       sum += interval;
     }
     if (!intervals.isEmpty()) {
-      return sum / intervals.size();
+      return sum / (double) intervals.size();
     } else {
       return 0;
     }
@@ -27,6 +27,7 @@ import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.os.Build;
 import android.os.Build.VERSION_CODES;
+import android.os.PowerManager;
 import android.provider.Settings.Global;
 import android.util.DisplayMetrics;
 import android.util.TypedValue;
@@ -222,6 +223,21 @@ public class UiUtil {
     }
   }
 
+  /**
+   * Asks the system to keep the performance steady instead of boosting it until the device
+   * gets too hot and throttles, while the window is visible.
+   */
+  public static void setSustainedPerformance(@NonNull Activity activity, boolean sustained) {
+    Window window = activity.getWindow();
+    if (window == null || Build.VERSION.SDK_INT < VERSION_CODES.N) {
+      return;
+    }
+    PowerManager powerManager = (PowerManager) activity.getSystemService(Context.POWER_SERVICE);
+    if (powerManager != null && powerManager.isSustainedPerformanceModeSupported()) {
+      window.setSustainedPerformanceMode(sustained);
+    }
+  }
+
   // Unit conversions
 
   public static int dpToPx(@NonNull Context context, @Dimension(unit = Dimension.DP) float dp) {
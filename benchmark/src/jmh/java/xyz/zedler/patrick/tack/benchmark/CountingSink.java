@@ -0,0 +1,65 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.benchmark;
+
+import xyz.zedler.patrick.tack.core.AudioSink;
+
+/**
+ * Sink which accepts a given number of frames and discards them, so only the engine is measured.
+ */
+class CountingSink implements AudioSink {
+
+  private final int sampleRate;
+  private int fillTarget, written;
+
+  CountingSink(int sampleRate) {
+    this.sampleRate = sampleRate;
+  }
+
+  /**
+   * Lets the next fill write the given number of frames.
+   */
+  void request(int frames) {
+    fillTarget = frames;
+    written = 0;
+  }
+
+  @Override
+  public int getSampleRate() {
+    return sampleRate;
+  }
+
+  @Override
+  public int getFillLevel() {
+    return written;
+  }
+
+  @Override
+  public int getFillTarget() {
+    return fillTarget;
+  }
+
+  @Override
+  public int write(float[] data, int offset, int length) {
+    int count = Math.min(length, fillTarget - written);
+    written += count;
+    return count;
+  }
+}
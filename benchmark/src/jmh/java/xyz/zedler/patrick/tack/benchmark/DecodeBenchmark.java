@@ -0,0 +1,100 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.zedler.patrick.tack.core.WavDecoder;
+
+/**
+ * Decoding of a WAV file held in memory, in every supported sample format.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+
+  private static final int SAMPLE_RATE = 48000;
+  private static final int FRAMES = SAMPLE_RATE / 2;
+
+  @Param({"16", "24", "32"})
+  public int bitsPerSample;
+
+  @Param({"1", "2"})
+  public int channelCount;
+
+  private byte[] file;
+
+  @Setup
+  public void setUp() {
+    int blockAlign = channelCount * bitsPerSample / 8;
+    ByteBuffer buffer = ByteBuffer.allocate(44 + FRAMES * blockAlign)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    buffer.put("RIFF".getBytes()).putInt(buffer.capacity() - 8).put("WAVE".getBytes());
+    buffer.put("fmt ".getBytes()).putInt(16)
+        .putShort((short) (bitsPerSample == 32 ? 3 : 1))
+        .putShort((short) channelCount)
+        .putInt(SAMPLE_RATE)
+        .putInt(SAMPLE_RATE * blockAlign)
+        .putShort((short) blockAlign)
+        .putShort((short) bitsPerSample);
+    buffer.put("data".getBytes()).putInt(FRAMES * blockAlign);
+    for (int i = 0; i < FRAMES * channelCount; i++) {
+      double sample = Math.sin(2 * Math.PI * 440 * (i / channelCount) / SAMPLE_RATE) * 0.5;
+      if (bitsPerSample == 16) {
+        buffer.putShort((short) (sample * Short.MAX_VALUE));
+      } else if (bitsPerSample == 24) {
+        int value = (int) (sample * 0x7FFFFF);
+        buffer.put((byte) value).put((byte) (value >> 8)).put((byte) (value >> 16));
+      } else {
+        buffer.putFloat((float) sample);
+      }
+    }
+    file = buffer.array();
+  }
+
+  /**
+   * The time per operation is the time per frame.
+   */
+  @Benchmark
+  @OperationsPerInvocation(FRAMES)
+  public float[] decode() throws IOException {
+    return WavDecoder.decode(Channels.newChannel(new ByteArrayInputStream(file))).data;
+  }
+}
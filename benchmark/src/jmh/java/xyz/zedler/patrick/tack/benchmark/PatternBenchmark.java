@@ -0,0 +1,78 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.zedler.patrick.tack.core.Pattern;
+import xyz.zedler.patrick.tack.core.Tick;
+import xyz.zedler.patrick.tack.core.TickType;
+
+/**
+ * Lookup of beat, subdivision and tick type for every tick, with the largest pattern possible.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatternBenchmark {
+
+  private static final int BEATS_MAX = 20;
+  private static final int SUBS_MAX = 10;
+
+  private Pattern pattern;
+  private long tickIndex;
+
+  @Setup
+  public void setUp() {
+    String[] beats = new String[BEATS_MAX];
+    String[] subdivisions = new String[SUBS_MAX];
+    Arrays.fill(beats, TickType.NORMAL);
+    Arrays.fill(subdivisions, TickType.SUB);
+    pattern = new Pattern(120, beats, subdivisions);
+  }
+
+  @Benchmark
+  public Tick getTick() {
+    return pattern.getTick(tickIndex++, 0);
+  }
+
+  @Benchmark
+  public String getTickType() {
+    return pattern.getTickType((int) (tickIndex++ % pattern.getTickCount()));
+  }
+
+  @Benchmark
+  public int getTickTypeId() {
+    return pattern.getTickTypeId((int) (tickIndex++ % pattern.getTickCount()));
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.zedler.patrick.tack.core.PcmCache;
+
+/**
+ * Processing of an imported sound into the cache compared to mapping the cached result.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PcmCacheBenchmark {
+
+  private static final int SAMPLE_RATE_IN = 44100;
+  private static final int SAMPLE_RATE_OUT = 48000;
+  private static final int FRAMES = SAMPLE_RATE_IN * 5;
+
+  private File source, cache, target;
+
+  @Setup
+  public void setUp() throws IOException {
+    source = File.createTempFile("source", ".pcm");
+    cache = File.createTempFile("cache", ".pcm");
+    target = File.createTempFile("target", ".pcm");
+    float[] data = new float[FRAMES];
+    for (int i = 0; i < data.length; i++) {
+      double envelope = 1 - (double) i / data.length;
+      data[i] = (float) (Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE_IN) * envelope * 0.5);
+    }
+    try (PcmCache.Writer writer = new PcmCache.Writer(source)) {
+      writer.write(data, 0, data.length);
+    }
+    PcmCache.process(source, SAMPLE_RATE_IN, cache, SAMPLE_RATE_OUT);
+  }
+
+  @TearDown
+  public void tearDown() {
+    source.delete();
+    cache.delete();
+    target.delete();
+  }
+
+  @Benchmark
+  public boolean process() throws IOException {
+    return PcmCache.process(source, SAMPLE_RATE_IN, target, SAMPLE_RATE_OUT);
+  }
+
+  @Benchmark
+  public FloatBuffer map() throws IOException {
+    return PcmCache.map(cache);
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.benchmark;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import xyz.zedler.patrick.tack.core.AudioEngine;
+import xyz.zedler.patrick.tack.core.Pattern;
+import xyz.zedler.patrick.tack.core.TickType;
+
+/**
+ * Rendering of the tick timeline, from the slowest tempo with the longest pattern that is
+ * rendered voice by voice to the fastest tempo with the most subdivisions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+
+  private static final int SAMPLE_RATE = 48000;
+  // one second of audio per invocation
+  private static final int FRAMES = SAMPLE_RATE;
+
+  // range of the tempo picker in the app
+  @Param({"1", "60", "120", "240", "500"})
+  public float tempo;
+
+  // beats x subdivisions, up to the maximum of 20 beats with 10 subdivisions each
+  @Param({"4x1", "4x4", "20x10"})
+  public String pattern;
+
+  private AudioEngine engine;
+  private CountingSink sink;
+  private int barFrames, soundIndex;
+
+  @Setup
+  public void setUp(Blackhole blackhole) {
+    String[] size = pattern.split("x");
+    String[] beats = new String[Integer.parseInt(size[0])];
+    String[] subdivisions = new String[Integer.parseInt(size[1])];
+    Arrays.fill(beats, TickType.NORMAL);
+    beats[0] = TickType.STRONG;
+    Arrays.fill(subdivisions, TickType.SUB);
+    subdivisions[0] = TickType.MUTED;
+
+    engine = new AudioEngine(SAMPLE_RATE, blackhole::consume);
+    engine.setPattern(new Pattern(tempo, beats, subdivisions));
+    setSounds(0);
+    engine.reset();
+    sink = new CountingSink(SAMPLE_RATE);
+    barFrames = (int) Math.ceil(60d * SAMPLE_RATE / tempo * beats.length);
+  }
+
+  private void setSounds(int index) {
+    engine.setSounds(
+        "benchmark" + index, getClick(880, 0.1f), getClick(1760, 0.1f), getClick(440, 0.05f)
+    );
+  }
+
+  /**
+   * Steady-state playback, the time per operation is the time per frame.
+   */
+  @Benchmark
+  @OperationsPerInvocation(FRAMES)
+  public void renderFrames() {
+    sink.request(FRAMES);
+    engine.fill(sink);
+  }
+
+  /**
+   * Steady-state playback of a whole bar, the normalized allocation rate of the gc profiler is
+   * the number of bytes allocated per bar.
+   */
+  @Benchmark
+  public void renderBar() {
+    sink.request(barFrames);
+    engine.fill(sink);
+  }
+
+  /**
+   * First bar after a sound change, includes rendering the bar into the cache.
+   */
+  @Benchmark
+  public void renderFirstBar() {
+    setSounds(++soundIndex);
+    engine.reset();
+    sink.request(barFrames);
+    engine.fill(sink);
+  }
+
+  private static FloatBuffer getClick(double frequency, float duration) {
+    float[] click = new float[(int) (SAMPLE_RATE * duration)];
+    for (int i = 0; i < click.length; i++) {
+      double envelope = 1 - (double) i / click.length;
+      click[i] = (float) (Math.sin(2 * Math.PI * frequency * i / SAMPLE_RATE) * envelope);
+    }
+    return FloatBuffer.wrap(click);
+  }
+}
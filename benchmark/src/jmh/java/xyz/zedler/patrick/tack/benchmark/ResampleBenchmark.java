@@ -0,0 +1,72 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.zedler.patrick.tack.core.Resampler;
+
+/**
+ * Conversion of a tick sound to the output rate, with the pitches used for accents.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResampleBenchmark {
+
+  private static final int SAMPLE_RATE_OUT = 48000;
+
+  @Param({"44100", "48000"})
+  public int sampleRateIn;
+
+  @Param({"-12", "0", "12"})
+  public int pitch;
+
+  private float[] sound;
+
+  @Setup
+  public void setUp() {
+    // typical length of a tick sample
+    sound = new float[sampleRateIn / 10];
+    Random random = new Random(0);
+    for (int i = 0; i < sound.length; i++) {
+      sound[i] = random.nextFloat() * 2 - 1;
+    }
+  }
+
+  @Benchmark
+  public float[] resample() {
+    return Resampler.resample(sound, sampleRateIn, SAMPLE_RATE_OUT, pitch);
+  }
+}
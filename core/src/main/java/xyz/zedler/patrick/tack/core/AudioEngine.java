@@ -0,0 +1,430 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.core;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import xyz.zedler.patrick.tack.core.BarCache.Bar;
+
+/**
+ * Schedules the ticks of a pattern on a sample-accurate timeline and renders them in quanta to an
+ * audio sink. Configuration changes can be made from any thread, rendering has to happen on a
+ * single thread. Tick sounds are only read with absolute gets from index 0 up to their limit, so
+ * the same buffers can be shared with other engines and threads.
+ */
+public class AudioEngine {
+
+  // 4 ms at 48 kHz, parameter changes are applied at every quantum boundary
+  public static final int QUANTUM_SIZE = 192;
+  // longer bars are mostly silence and rendered tick by tick instead of being cached
+  private static final int BAR_DURATION_MAX = 4;
+  private static final int BAR_CACHE_DURATION = BAR_DURATION_MAX * 4;
+  // enough for the longest samples at maximum tempo and subdivisions, bounds the mixing cost
+  private static final int VOICE_COUNT = 8;
+
+  private final int sampleRate;
+  private final TickListener listener;
+  private final BarCache barCache;
+  private final GainStage gainStage;
+  private final TickScheduler scheduler;
+  private final TickRing ticks = new TickRing();
+  private volatile RenderConfig config;
+  private Pattern pattern;
+  private String sound;
+  private FloatBuffer tickStrong, tickNormal, tickSub;
+  private float levelStrong = 1, levelNormal = 1, levelSub = 1;
+  private final FloatBuffer[] voices = new FloatBuffer[VOICE_COUNT];
+  private final float[] voiceLevels = new float[VOICE_COUNT];
+  private final int[] voicePositions = new int[VOICE_COUNT];
+  private int voiceCount;
+  private Bar bar;
+  private String barKey;
+  private int barPosition, barEnd, quantumOffset;
+  private long framePosition;
+  private volatile boolean muted;
+  private final float[] quantum = new float[QUANTUM_SIZE];
+
+  public AudioEngine(int sampleRate, TickListener listener) {
+    this.sampleRate = sampleRate;
+    this.listener = listener;
+    barCache = new BarCache(sampleRate * BAR_CACHE_DURATION);
+    gainStage = new GainStage(sampleRate);
+    scheduler = new TickScheduler(sampleRate);
+  }
+
+  public int getSampleRate() {
+    return sampleRate;
+  }
+
+  /**
+   * Returns the ring the ticks passed to the listener are written to, consumers can copy a tick
+   * out of it by its sequence number until its slot is reused.
+   */
+  public TickRing getTickRing() {
+    return ticks;
+  }
+
+  /**
+   * Returns true as soon as a pattern has been set.
+   */
+  public boolean isReady() {
+    return config != null;
+  }
+
+  /**
+   * Rewinds the timeline, so the next rendered quantum starts with the first tick of the pattern.
+   * Has to be called before the first fill and not concurrently to it.
+   */
+  public void reset() {
+    RenderConfig config = this.config;
+    if (config == null) {
+      throw new IllegalStateException("No pattern set");
+    }
+    Arrays.fill(voices, null);
+    voiceCount = 0;
+    bar = null;
+    barKey = null;
+    framePosition = 0;
+    quantumOffset = QUANTUM_SIZE;
+    scheduler.reset(config.pattern);
+    gainStage.reset();
+  }
+
+  /**
+   * Tops up the sink to its target fill level, returns early if the sink does not accept more.
+   */
+  public void fill(AudioSink sink) {
+    while (sink.getFillLevel() < sink.getFillTarget()) {
+      if (quantumOffset == QUANTUM_SIZE) {
+        renderQuantum();
+        quantumOffset = 0;
+      }
+      quantumOffset += sink.write(quantum, quantumOffset, QUANTUM_SIZE - quantumOffset);
+      if (quantumOffset < QUANTUM_SIZE) {
+        break; // sink is full
+      }
+    }
+  }
+
+  /**
+   * Returns the number of frames rendered since the last reset.
+   */
+  public long getFramePosition() {
+    return framePosition;
+  }
+
+  /**
+   * Returns the delay in frames between the frame of a tick and the start of its sound in the
+   * rendered audio, caused by the look-ahead of the limiter.
+   */
+  public int getLatency() {
+    return gainStage.getLatency();
+  }
+
+  public synchronized void setPattern(Pattern pattern) {
+    this.pattern = pattern;
+    updateConfig();
+  }
+
+  /**
+   * Sets the tick sounds at the sample rate of the engine. The sound name is used to identify
+   * cached bars and has to change whenever the samples do. The sounds can be memory-mapped.
+   */
+  public synchronized void setSounds(
+      String sound, FloatBuffer tickNormal, FloatBuffer tickStrong, FloatBuffer tickSub
+  ) {
+    this.sound = sound;
+    this.tickNormal = tickNormal;
+    this.tickStrong = tickStrong;
+    this.tickSub = tickSub;
+    updateConfig();
+  }
+
+  /**
+   * Sets the linear levels of the tick types, rendered into the cached bars.
+   */
+  public synchronized void setTickLevels(float levelStrong, float levelNormal, float levelSub) {
+    this.levelStrong = levelStrong;
+    this.levelNormal = levelNormal;
+    this.levelSub = levelSub;
+    updateConfig();
+  }
+
+  private void updateConfig() {
+    if (pattern != null) {
+      config = new RenderConfig(
+          pattern, sound, tickNormal, tickStrong, tickSub, levelNormal, levelStrong, levelSub
+      );
+    }
+  }
+
+  /**
+   * Sets the linear output gain, peaks above full scale are caught by the limiter.
+   */
+  public void setGain(float gain) {
+    gainStage.setGain(gain);
+  }
+
+  public void setMuted(boolean muted) {
+    this.muted = muted;
+  }
+
+  private void renderQuantum() {
+    mixQuantum();
+    gainStage.process(quantum, QUANTUM_SIZE);
+    if (muted) {
+      Arrays.fill(quantum, 0);
+    }
+  }
+
+  /**
+   * Renders the next quantum without the gain stage and returns the internal buffer, for offline
+   * rendering where the gain stage runs separately.
+   */
+  float[] mixQuantum() {
+    RenderConfig config = this.config;
+    scheduler.update(config.pattern, framePosition);
+    int offset = 0;
+    while (offset < QUANTUM_SIZE) {
+      long framesUntilTick = scheduler.getTickFrame() - (framePosition + offset);
+      if (framesUntilTick <= 0) {
+        Tick tick = ticks.publish(
+            scheduler.nextTick(config.pattern, framePosition + offset, ticks.next())
+        );
+        listener.onTick(tick);
+        startTick(config, tick);
+        framesUntilTick = Math.max(1, scheduler.getTickFrame() - (framePosition + offset));
+      }
+      int length = (int) Math.min(QUANTUM_SIZE - offset, framesUntilTick);
+      if (bar != null) {
+        renderBar(offset, length);
+      } else {
+        Arrays.fill(quantum, offset, offset + length, 0);
+      }
+      mixVoices(offset, length);
+      offset += length;
+    }
+    framePosition += QUANTUM_SIZE;
+    return quantum;
+  }
+
+  /**
+   * Moves the timeline on by one quantum like rendering would, including tick callbacks and their
+   * pattern changes, but starts no sounds. Only allowed before the first mixed quantum.
+   */
+  void skipQuantum() {
+    RenderConfig config = this.config;
+    scheduler.update(config.pattern, framePosition);
+    int offset = 0;
+    while (offset < QUANTUM_SIZE) {
+      long framesUntilTick = scheduler.getTickFrame() - (framePosition + offset);
+      if (framesUntilTick <= 0) {
+        listener.onTick(ticks.publish(
+            scheduler.nextTick(config.pattern, framePosition + offset, ticks.next())
+        ));
+        framesUntilTick = Math.max(1, scheduler.getTickFrame() - (framePosition + offset));
+      }
+      offset += (int) Math.min(QUANTUM_SIZE - offset, framesUntilTick);
+    }
+    framePosition += QUANTUM_SIZE;
+  }
+
+  /**
+   * Continues the cached bar at the position of the tick, or falls back to the single tick sound.
+   * New bars are only rendered at the first tick of a bar, a mid-bar pattern change can only
+   * switch to an already cached bar. The tail of the previous bar keeps sounding as a voice.
+   */
+  private void startTick(RenderConfig config, Tick tick) {
+    int index = (tick.beat - 1) * config.pattern.getSubdivisionCount() + tick.subdivision - 1;
+    if (index == 0 && bar != null) {
+      startVoice(bar.buffer, barPosition, 1);
+    }
+    if (!config.barKey.equals(barKey) || (index == 0 && bar == null)) {
+      barKey = config.barKey;
+      bar = barCache.get(barKey);
+      if (bar == null && index == 0) {
+        bar = renderBar(config);
+        if (bar != null) {
+          barCache.put(barKey, bar);
+        }
+      }
+    }
+    if (bar != null && index < bar.tickOffsets.length) {
+      barPosition = bar.tickOffsets[index];
+      // the timeline carries the fraction of the period, so the next tick can come one frame
+      // later than its truncated offset in the bar, which must not leak its sound early
+      barEnd = index + 1 < bar.tickOffsets.length ? bar.tickOffsets[index + 1] : bar.data.length;
+    } else {
+      bar = null;
+      startVoice(getTickSound(config, tick.typeId), 0, getTickLevel(config, tick.typeId));
+    }
+  }
+
+  /**
+   * Starts playing the sample from the given position in a new voice. Voices are kept and mixed in
+   * the order they were started, so the sum does not depend on which voices played before. If all
+   * voices are busy, the one which has been playing the longest is replaced.
+   */
+  private void startVoice(FloatBuffer sample, int position, float level) {
+    if (sample == null || position >= sample.limit()) {
+      return;
+    }
+    if (voiceCount == VOICE_COUNT) {
+      removeVoice(0);
+    }
+    voices[voiceCount] = sample;
+    voicePositions[voiceCount] = position;
+    voiceLevels[voiceCount] = level;
+    voiceCount++;
+  }
+
+  private void removeVoice(int index) {
+    voiceCount--;
+    System.arraycopy(voices, index + 1, voices, index, voiceCount - index);
+    System.arraycopy(voicePositions, index + 1, voicePositions, index, voiceCount - index);
+    System.arraycopy(voiceLevels, index + 1, voiceLevels, index, voiceCount - index);
+    voices[voiceCount] = null;
+  }
+
+  private void mixVoices(int offset, int length) {
+    for (int i = 0; i < voiceCount; i++) {
+      FloatBuffer voice = voices[i];
+      int position = voicePositions[i];
+      int count = Math.min(length, voice.limit() - position);
+      float level = voiceLevels[i];
+      for (int j = 0; j < count; j++) {
+        quantum[offset + j] += voice.get(position + j) * level;
+      }
+      if (position + count < voice.limit()) {
+        voicePositions[i] = position + count;
+      } else {
+        removeVoice(i--);
+      }
+    }
+  }
+
+  private void renderBar(int offset, int length) {
+    int barLength = Math.max(0, Math.min(length, barEnd - barPosition));
+    if (barLength > 0) {
+      System.arraycopy(bar.data, barPosition, quantum, offset, barLength);
+    }
+    // hold the last frame before the next tick, the end of the bar data is followed by silence
+    float hold = barEnd < bar.data.length && barEnd > 0 ? bar.data[barEnd - 1] : 0;
+    Arrays.fill(quantum, offset + barLength, offset + length, hold);
+    barPosition += length;
+  }
+
+  /**
+   * Renders one whole bar into a contiguous buffer, so steady-state playback only needs to copy
+   * it to the sink. Tick sounds are summed and run past the end of the bar, so the buffer can be
+   * longer than the bar itself. Returns null if the bar is too long to be worth caching.
+   */
+  private Bar renderBar(RenderConfig config) {
+    Pattern pattern = config.pattern;
+    int tickCount = pattern.getTickCount();
+    double period = pattern.getPeriodExact(sampleRate);
+    double barSize = period * tickCount;
+    if (barSize > sampleRate * BAR_DURATION_MAX) {
+      return null;
+    }
+    int size = (int) Math.ceil(barSize);
+    int[] tickOffsets = new int[tickCount];
+    FloatBuffer[] tickSounds = new FloatBuffer[tickCount];
+    float[] tickLevels = new float[tickCount];
+    for (int i = 0; i < tickCount; i++) {
+      tickOffsets[i] = (int) (i * period);
+      int tickType = pattern.getTickTypeId(i);
+      tickSounds[i] = getTickSound(config, tickType);
+      tickLevels[i] = getTickLevel(config, tickType);
+      if (tickSounds[i] != null) {
+        size = Math.max(size, tickOffsets[i] + tickSounds[i].limit());
+      }
+    }
+    float[] data = new float[size];
+    for (int i = 0; i < tickCount; i++) {
+      FloatBuffer tickSound = tickSounds[i];
+      if (tickSound == null) {
+        continue;
+      }
+      for (int j = 0; j < tickSound.limit(); j++) {
+        data[tickOffsets[i] + j] += tickSound.get(j) * tickLevels[i];
+      }
+    }
+    return new Bar(data, tickOffsets);
+  }
+
+  private static FloatBuffer getTickSound(RenderConfig config, int tickType) {
+    switch (tickType) {
+      case TickType.ID_STRONG:
+        return config.tickStrong;
+      case TickType.ID_SUB:
+        return config.tickSub;
+      case TickType.ID_MUTED:
+        return null;
+      default:
+        return config.tickNormal;
+    }
+  }
+
+  private static float getTickLevel(RenderConfig config, int tickType) {
+    switch (tickType) {
+      case TickType.ID_STRONG:
+        return config.levelStrong;
+      case TickType.ID_SUB:
+        return config.levelSub;
+      default:
+        return config.levelNormal;
+    }
+  }
+
+  /**
+   * Immutable snapshot of everything the render thread needs, swapped as a whole.
+   */
+  private static class RenderConfig {
+
+    final Pattern pattern;
+    final FloatBuffer tickNormal, tickStrong, tickSub;
+    final float levelNormal, levelStrong, levelSub;
+    final String barKey;
+
+    RenderConfig(
+        Pattern pattern, String sound, FloatBuffer tickNormal, FloatBuffer tickStrong,
+        FloatBuffer tickSub, float levelNormal, float levelStrong, float levelSub
+    ) {
+      this.pattern = pattern;
+      this.tickNormal = tickNormal;
+      this.tickStrong = tickStrong;
+      this.tickSub = tickSub;
+      this.levelNormal = levelNormal;
+      this.levelStrong = levelStrong;
+      this.levelSub = levelSub;
+      barKey = sound + "|" + pattern + "|" + levelNormal + "|" + levelStrong + "|" + levelSub;
+    }
+  }
+
+  public interface TickListener {
+
+    /**
+     * Called on the render thread when a tick is rendered, ahead of its playback by the fill
+     * level of the sink. The tick is a slot of the tick ring and only valid until it is reused.
+     */
+    void onTick(Tick tick);
+  }
+}
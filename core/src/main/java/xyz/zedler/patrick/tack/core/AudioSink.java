@@ -0,0 +1,43 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.core;
+
+/**
+ * Output of the audio engine, mono float samples at a fixed sample rate.
+ */
+public interface AudioSink {
+
+  int getSampleRate();
+
+  /**
+   * Returns the number of frames which have been written but not played yet.
+   */
+  int getFillLevel();
+
+  /**
+   * Returns the fill level the engine should keep up, as low as possible for a low latency.
+   */
+  int getFillTarget();
+
+  /**
+   * Writes as many frames as possible without blocking and returns the number of frames written.
+   */
+  int write(float[] data, int offset, int length);
+}
@@ -0,0 +1,81 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.core;
+
+import java.nio.FloatBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache for pre-rendered bars, bounded by the total number of frames.
+ */
+public class BarCache {
+
+  private final Map<String, Bar> bars = new LinkedHashMap<>(16, 0.75f, true);
+  private final int maxFrames;
+  private int frames;
+
+  public BarCache(int maxFrames) {
+    this.maxFrames = maxFrames;
+  }
+
+  public synchronized Bar get(String key) {
+    return bars.get(key);
+  }
+
+  public synchronized void put(String key, Bar bar) {
+    if (bar.data.length > maxFrames) {
+      return;
+    }
+    Bar previous = bars.put(key, bar);
+    if (previous != null) {
+      frames -= previous.data.length;
+    }
+    frames += bar.data.length;
+    Iterator<Bar> iterator = bars.values().iterator();
+    while (frames > maxFrames && iterator.hasNext()) {
+      Bar eldest = iterator.next();
+      if (eldest != bar) {
+        frames -= eldest.data.length;
+        iterator.remove();
+      }
+    }
+  }
+
+  public synchronized void clear() {
+    bars.clear();
+    frames = 0;
+  }
+
+  public static class Bar {
+
+    public final float[] data;
+    // view of the data, for the tail of the bar which keeps playing as a voice
+    public final FloatBuffer buffer;
+    public final int[] tickOffsets;
+
+    public Bar(float[] data, int[] tickOffsets) {
+      this.data = data;
+      this.tickOffsets = tickOffsets;
+      buffer = FloatBuffer.wrap(data);
+    }
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.core;
+
+import java.util.Random;
+
+/**
+ * Synthesizes click sounds from a few parameters, as alternative to recorded samples. The result
+ * is meant to be rendered once per output sample rate and played like a sample.
+ */
+public final class ClickSynth {
+
+  public static final String WAVEFORM_SINE = "sine";
+  public static final String WAVEFORM_WOOD = "wood";
+  public static final String WAVEFORM_BELL = "bell";
+
+  // the decay is the time until the envelope has fallen by 60 dB, where the sound is cut off
+  private static final double DECAY_LEVEL = 0.001;
+  private static final float ATTACK_TIME = 0.001f;
+  private static final float PEAK = 0.9f;
+  // inharmonic ratios of the second mode of a wood block and the modulator of the bell
+  private static final double WOOD_RATIO = 2.71;
+  private static final double BELL_RATIO = 1.41;
+  private static final double BELL_INDEX_MAX = 6;
+  // same noise for every rendering, so equal parameters always result in equal sounds
+  private static final long NOISE_SEED = 0x7ac4L;
+
+  private ClickSynth() {
+  }
+
+  public static float[] render(Params params, int sampleRate) {
+    int attack = Math.max(1, Math.round(sampleRate * ATTACK_TIME));
+    int length = attack + Math.max(1, Math.round(sampleRate * params.decay));
+    double decayRate = Math.log(DECAY_LEVEL) / (length - attack);
+    float[] envelope = new float[length];
+    for (int i = 0; i < length; i++) {
+      envelope[i] = i < attack ? (float) i / attack : (float) Math.exp(decayRate * (i - attack));
+    }
+    double omega = 2 * Math.PI * params.pitch / sampleRate;
+    float[] data = new float[length];
+    switch (params.waveform) {
+      case WAVEFORM_WOOD:
+        renderWood(data, omega, params.brightness);
+        break;
+      case WAVEFORM_BELL:
+        renderBell(data, omega, params.brightness, envelope);
+        break;
+      default:
+        renderSine(data, omega, params.brightness);
+        break;
+    }
+    float peak = 0;
+    for (int i = 0; i < length; i++) {
+      data[i] *= envelope[i];
+      peak = Math.max(peak, Math.abs(data[i]));
+    }
+    if (peak > 0) {
+      float scale = PEAK / peak;
+      for (int i = 0; i < length; i++) {
+        data[i] *= scale;
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Sine with the second and third harmonic mixed in by the brightness.
+   */
+  private static void renderSine(float[] data, double omega, float brightness) {
+    for (int i = 0; i < data.length; i++) {
+      double phase = omega * i;
+      data[i] = (float) (Math.sin(phase)
+          + brightness * 0.5 * Math.sin(2 * phase)
+          + brightness * 0.25 * Math.sin(3 * phase));
+    }
+  }
+
+  /**
+   * Noise through two resonators at the modes of a wood block. Brighter sounds have wider bands,
+   * which let more of the noise through, and a stronger upper mode.
+   */
+  private static void renderWood(float[] data, double omega, float brightness) {
+    Random random = new Random(NOISE_SEED);
+    Resonator low = new Resonator(omega, omega * (0.02 + 0.1 * brightness));
+    Resonator high = new Resonator(
+        omega * WOOD_RATIO, omega * WOOD_RATIO * (0.03 + 0.15 * brightness)
+    );
+    for (int i = 0; i < data.length; i++) {
+      double noise = random.nextDouble() * 2 - 1;
+      data[i] = (float) (low.process(noise) + brightness * high.process(noise));
+    }
+  }
+
+  /**
+   * Two-operator FM with an inharmonic modulator. The modulation index follows the envelope, so
+   * the bell starts bright and mellows while it decays.
+   */
+  private static void renderBell(float[] data, double omega, float brightness, float[] envelope) {
+    double index = BELL_INDEX_MAX * brightness;
+    for (int i = 0; i < data.length; i++) {
+      double modulator = Math.sin(omega * BELL_RATIO * i);
+      data[i] = (float) Math.sin(omega * i + index * envelope[i] * modulator);
+    }
+  }
+
+  /**
+   * Two-pole resonator with the given center frequency and bandwidth in radians per sample,
+   * normalized to unity gain at the center.
+   */
+  private static class Resonator {
+
+    private final double a1, a2, gain;
+    private double y1, y2;
+
+    Resonator(double omega, double bandwidth) {
+      double radius = Math.exp(-bandwidth / 2);
+      a1 = 2 * radius * Math.cos(Math.min(omega, Math.PI));
+      a2 = -radius * radius;
+      gain = 1 - radius;
+    }
+
+    double process(double input) {
+      double output = gain * input + a1 * y1 + a2 * y2;
+      y2 = y1;
+      y1 = output;
+      return output;
+    }
+  }
+
+  /**
+   * Parameters of a synthesized click.
+   */
+  public static class Params {
+
+    public final String waveform;
+    public final float pitch, decay, brightness;
+
+    /**
+     * @param pitch      frequency in Hz
+     * @param decay      time in seconds until the click has faded out
+     * @param brightness amount of upper partials from 0 to 1
+     */
+    public Params(String waveform, float pitch, float decay, float brightness) {
+      if (pitch <= 0 || decay <= 0) {
+        throw new IllegalArgumentException("Invalid click parameters");
+      }
+      this.waveform = waveform;
+      this.pitch = pitch;
+      this.decay = decay;
+      this.brightness = Math.max(0, Math.min(1, brightness));
+    }
+
+    /**
+     * Returns a key which is equal for equal parameters, for caching the rendered clicks.
+     */
+    public String getKey() {
+      return waveform + "|" + pitch + "|" + decay + "|" + brightness;
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.core;
+
+/**
+ * Everything that defines a click track of fixed length: the pattern it starts with, the
+ * count-in, the number of bars after it and an optional tempo change every given number of bars.
+ */
+public class ClickTrack {
+
+  public static final int TEMPO_MIN = 1;
+  public static final int TEMPO_MAX = 500;
+
+  private final Pattern pattern;
+  private final int countIn, barCount;
+  private int incrementalAmount, incrementalInterval;
+  private boolean incrementalIncrease;
+
+  /**
+   * @param countIn  number of bars before the actual track starts
+   * @param barCount number of bars after the count-in
+   */
+  public ClickTrack(Pattern pattern, int countIn, int barCount) {
+    if (countIn < 0 || barCount < 1) {
+      throw new IllegalArgumentException("Invalid length: " + countIn + " + " + barCount);
+    }
+    this.pattern = pattern;
+    this.countIn = countIn;
+    this.barCount = barCount;
+  }
+
+  /**
+   * Changes the tempo by the given amount every interval of bars after the count-in, like the
+   * incremental tempo change in bars does during playback.
+   */
+  public void setIncremental(int amount, int interval, boolean increase) {
+    incrementalAmount = amount;
+    incrementalInterval = interval;
+    incrementalIncrease = increase;
+  }
+
+  public Pattern getPattern() {
+    return pattern;
+  }
+
+  public int getCountIn() {
+    return countIn;
+  }
+
+  /**
+   * Returns the number of bars including the count-in.
+   */
+  public int getTotalBarCount() {
+    return countIn + barCount;
+  }
+
+  /**
+   * Returns the pattern to continue with after the tick, or null if the tempo stays the same.
+   * Has to be called for every tick in order, like a tick listener of the engine.
+   */
+  public Pattern getChangedPattern(Tick tick) {
+    if (incrementalAmount == 0) {
+      return null;
+    }
+    boolean isIncrementalBar = Timing.isIncrementalBar(
+        tick, pattern.getBeatCount(), pattern.getSubdivisionCount(), countIn, incrementalInterval
+    );
+    if (!isIncrementalBar) {
+      return null;
+    }
+    int change = incrementalAmount * (incrementalIncrease ? 1 : -1);
+    float tempo = Math.min(Math.max(tick.tempo + change, TEMPO_MIN), TEMPO_MAX);
+    if (tempo == tick.tempo) {
+      return null;
+    }
+    return pattern.withTempo(tempo);
+  }
+}
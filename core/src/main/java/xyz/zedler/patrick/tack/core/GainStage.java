@@ -0,0 +1,117 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.core;
+
+/**
+ * Output gain with smoothed ramps and a look-ahead peak limiter, applied in place to the rendered
+ * audio. Allocation-free after construction, so it can run on the audio thread.
+ */
+public class GainStage {
+
+  // slightly below full scale, so the resampling in the system mixer does not clip
+  private static final float THRESHOLD = 0.98f;
+  private static final float RAMP_TIME = 0.01f;
+  private static final float LOOKAHEAD_TIME = 0.001f;
+  private static final float RELEASE_TIME = 0.05f;
+
+  private final float rampCoefficient, attackCoefficient, releaseCoefficient;
+  private final float[] delay, requiredGains;
+  private volatile float targetGain = 1;
+  private float gain = 1, envelope = 1;
+  private int delayPosition, limitedCount;
+
+  public GainStage(int sampleRate) {
+    int lookahead = Math.max(1, Math.round(sampleRate * LOOKAHEAD_TIME));
+    delay = new float[lookahead];
+    requiredGains = new float[lookahead];
+    rampCoefficient = getCoefficient(sampleRate * RAMP_TIME);
+    // fast enough to settle within the look-ahead window
+    attackCoefficient = getCoefficient(lookahead / 5f);
+    releaseCoefficient = getCoefficient(sampleRate * RELEASE_TIME);
+    reset();
+  }
+
+  /**
+   * Sets the linear gain, the change is ramped to avoid clicks.
+   */
+  public void setGain(float gain) {
+    targetGain = gain;
+  }
+
+  /**
+   * Clears the limiter state and jumps to the target gain, has to be called before playback.
+   */
+  public void reset() {
+    gain = targetGain;
+    envelope = 1;
+    delayPosition = 0;
+    limitedCount = 0;
+    for (int i = 0; i < delay.length; i++) {
+      delay[i] = 0;
+      requiredGains[i] = 1;
+    }
+  }
+
+  /**
+   * Returns the delay of the look-ahead in frames.
+   */
+  public int getLatency() {
+    return delay.length;
+  }
+
+  public void process(float[] buffer, int length) {
+    float targetGain = this.targetGain;
+    for (int i = 0; i < length; i++) {
+      gain += (targetGain - gain) * rampCoefficient;
+      float sample = buffer[i] * gain;
+      float peak = Math.abs(sample);
+      float outgoing = delay[delayPosition];
+      float outgoingRequired = requiredGains[delayPosition];
+      float incomingRequired = peak > THRESHOLD ? THRESHOLD / peak : 1;
+      delay[delayPosition] = sample;
+      requiredGains[delayPosition] = incomingRequired;
+      delayPosition = (delayPosition + 1) % delay.length;
+      limitedCount += (incomingRequired < 1 ? 1 : 0) - (outgoingRequired < 1 ? 1 : 0);
+
+      float required = 1;
+      // the window only has to be scanned while a peak above the threshold is in it
+      if (limitedCount > 0) {
+        for (float requiredGain : requiredGains) {
+          required = Math.min(required, requiredGain);
+        }
+      }
+      float coefficient = required < envelope ? attackCoefficient : releaseCoefficient;
+      envelope += (required - envelope) * coefficient;
+      // the smoothed envelope may lag behind, never let the outgoing peak exceed the threshold
+      buffer[i] = outgoing * Math.min(envelope, outgoingRequired);
+    }
+  }
+
+  /**
+   * Returns the coefficient of a one-pole filter with the given time constant in samples.
+   */
+  private static float getCoefficient(float samples) {
+    return (float) (1 - Math.exp(-1 / Math.max(1, samples)));
+  }
+
+  public static float dbToLinear(float db) {
+    return (float) Math.pow(10, db / 20);
+  }
+}
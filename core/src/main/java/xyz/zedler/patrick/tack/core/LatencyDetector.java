@@ -0,0 +1,140 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.core;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Measures the delay between a train of played clicks and their recording by cross-correlating
+ * the recording with the clicks at the frames they were expected at. Works on plain PCM buffers,
+ * so it does not depend on how the audio has been captured.
+ */
+public class LatencyDetector {
+
+  // attack of the click is all that is needed to find it, the tail would only cost time
+  private static final int TEMPLATE_DURATION_MS = 10;
+  private static final int CLICK_COUNT_MAX = 64;
+
+  private final int maxLag, templateSize;
+  private final long[] clickFrames = new long[CLICK_COUNT_MAX];
+  private final FloatBuffer[] clickSounds = new FloatBuffer[CLICK_COUNT_MAX];
+  private float[] recording = new float[0];
+  private int clickCount, recordingSize;
+
+  /**
+   * Creates a detector which searches the recording up to the given number of frames before and
+   * after the expected frame of each click.
+   */
+  public LatencyDetector(int sampleRate, int maxLag) {
+    this.maxLag = maxLag;
+    templateSize = sampleRate * TEMPLATE_DURATION_MS / 1000;
+  }
+
+  /**
+   * Adds a click with the given sound which is expected at the given frame of the recording.
+   * Clicks beyond the capacity of the detector are ignored.
+   */
+  public void addClick(long frame, FloatBuffer sound) {
+    if (clickCount < CLICK_COUNT_MAX && sound != null && sound.limit() > 0) {
+      clickFrames[clickCount] = frame;
+      clickSounds[clickCount] = sound;
+      clickCount++;
+    }
+  }
+
+  /**
+   * Appends recorded frames, the first frame ever added is frame 0 of the recording.
+   */
+  public void addRecording(float[] data, int offset, int length) {
+    if (recordingSize + length > recording.length) {
+      recording = Arrays.copyOf(recording, Math.max(recordingSize + length, recording.length * 2));
+    }
+    System.arraycopy(data, offset, recording, recordingSize, length);
+    recordingSize += length;
+  }
+
+  public int getRecordingSize() {
+    return recordingSize;
+  }
+
+  /**
+   * Returns the lag at which the recording matches the clicks best, positive if the clicks have
+   * been recorded later than expected, or null if no click is fully covered by the recording.
+   */
+  public Result detect() {
+    double[] products = new double[2 * maxLag + 1];
+    double[] energies = new double[2 * maxLag + 1];
+    double templateEnergy = 0;
+    int usedClicks = 0;
+    for (int c = 0; c < clickCount; c++) {
+      long frame = clickFrames[c];
+      FloatBuffer sound = clickSounds[c];
+      int size = Math.min(templateSize, sound.limit());
+      if (frame - maxLag < 0 || frame + maxLag + size > recordingSize) {
+        continue;
+      }
+      usedClicks++;
+      for (int i = 0; i < size; i++) {
+        templateEnergy += sound.get(i) * sound.get(i);
+      }
+      for (int lag = -maxLag; lag <= maxLag; lag++) {
+        int start = (int) (frame + lag);
+        double product = 0, energy = 0;
+        for (int i = 0; i < size; i++) {
+          float sample = recording[start + i];
+          product += sample * sound.get(i);
+          energy += sample * sample;
+        }
+        products[lag + maxLag] += product;
+        energies[lag + maxLag] += energy;
+      }
+    }
+    if (usedClicks == 0 || templateEnergy == 0) {
+      return null;
+    }
+    int bestLag = 0;
+    double bestCorrelation = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < products.length; i++) {
+      double correlation = energies[i] > 0
+          ? products[i] / Math.sqrt(energies[i] * templateEnergy)
+          : 0;
+      if (correlation > bestCorrelation) {
+        bestCorrelation = correlation;
+        bestLag = i - maxLag;
+      }
+    }
+    return new Result(bestLag, bestCorrelation, usedClicks);
+  }
+
+  public static class Result {
+
+    public final int lag;
+    // normalized correlation at the lag, 1 for a perfect match up to the level
+    public final double correlation;
+    public final int clickCount;
+
+    public Result(int lag, double correlation, int clickCount) {
+      this.lag = lag;
+      this.correlation = correlation;
+      this.clickCount = clickCount;
+    }
+  }
+}
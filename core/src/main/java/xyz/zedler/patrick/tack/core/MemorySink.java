@@ -0,0 +1,88 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.core;
+
+import java.util.Arrays;
+
+/**
+ * Sink which collects the rendered audio in memory, for offline rendering and tests. Frames are
+ * only counted as played when they are consumed.
+ */
+public class MemorySink implements AudioSink {
+
+  private final int sampleRate, fillTarget;
+  private float[] data;
+  private int size, consumed;
+
+  public MemorySink(int sampleRate, int fillTarget) {
+    this.sampleRate = sampleRate;
+    this.fillTarget = fillTarget;
+    data = new float[Math.max(fillTarget, 1)];
+  }
+
+  @Override
+  public int getSampleRate() {
+    return sampleRate;
+  }
+
+  @Override
+  public int getFillLevel() {
+    return size - consumed;
+  }
+
+  @Override
+  public int getFillTarget() {
+    return fillTarget;
+  }
+
+  @Override
+  public int write(float[] data, int offset, int length) {
+    int count = Math.min(length, fillTarget - getFillLevel());
+    if (count <= 0) {
+      return 0;
+    }
+    if (size + count > this.data.length) {
+      this.data = Arrays.copyOf(this.data, Math.max(size + count, this.data.length * 2));
+    }
+    System.arraycopy(data, offset, this.data, size, count);
+    size += count;
+    return count;
+  }
+
+  /**
+   * Marks the given number of frames as played, so the engine can write more.
+   */
+  public void consume(int frames) {
+    consumed = Math.min(size, consumed + frames);
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  public float[] getData() {
+    return Arrays.copyOf(data, size);
+  }
+
+  public void clear() {
+    size = 0;
+    consumed = 0;
+  }
+}
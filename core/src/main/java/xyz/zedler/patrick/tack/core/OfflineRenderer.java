@@ -0,0 +1,230 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.core;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Renders a click track with the same engine as playback, sample for sample. The track is split
+ * into ranges of whole bars which are rendered in parallel, each by its own engine, and written in
+ * order. The output starts with the first tick, without the look-ahead delay of the limiter.
+ */
+public class OfflineRenderer {
+
+  // long enough to keep the pre-roll of each range small against the range itself
+  private static final int RANGE_DURATION = 15;
+
+  private final int sampleRate;
+  private final ClickTrack track;
+  private String sound;
+  private FloatBuffer tickNormal, tickStrong, tickSub;
+  private float levelStrong = 1, levelNormal = 1, levelSub = 1;
+  private float gain = 1;
+  private long[] barFrames;
+
+  public OfflineRenderer(int sampleRate, ClickTrack track) {
+    this.sampleRate = sampleRate;
+    this.track = track;
+  }
+
+  public int getSampleRate() {
+    return sampleRate;
+  }
+
+  /**
+   * Sets the tick sounds at the given sample rate, see {@link AudioEngine#setSounds}.
+   */
+  public void setSounds(
+      String sound, FloatBuffer tickNormal, FloatBuffer tickStrong, FloatBuffer tickSub
+  ) {
+    this.sound = sound;
+    this.tickNormal = tickNormal;
+    this.tickStrong = tickStrong;
+    this.tickSub = tickSub;
+  }
+
+  public void setTickLevels(float levelStrong, float levelNormal, float levelSub) {
+    this.levelStrong = levelStrong;
+    this.levelNormal = levelNormal;
+    this.levelSub = levelSub;
+  }
+
+  public void setGain(float gain) {
+    this.gain = gain;
+  }
+
+  /**
+   * Returns the length of the rendered track in frames, up to the end of its last bar.
+   */
+  public long getFrameCount() {
+    long[] barFrames = getBarFrames();
+    return barFrames[barFrames.length - 1];
+  }
+
+  /**
+   * Renders the whole track to the writer, which has to be created with {@link #getFrameCount}.
+   * At most two ranges per worker of the pool are held in memory at the same time.
+   */
+  public void render(ForkJoinPool pool, WavWriter writer) throws IOException {
+    if (writer.getFrameCount() != getFrameCount()) {
+      throw new IllegalArgumentException("Writer does not match the length of the track");
+    }
+    long[] barFrames = getBarFrames();
+    int latency = new GainStage(sampleRate).getLatency();
+    // the limiter runs in order over the stitched ranges, its state carries over from bar to bar
+    GainStage gainStage = new GainStage(sampleRate);
+    gainStage.setGain(gain);
+    gainStage.reset();
+    int maxPending = pool.getParallelism() * 2;
+    Queue<ForkJoinTask<float[]>> pending = new ArrayDeque<>();
+    int barIndex = 0;
+    long skipped = 0;
+    while (barIndex < barFrames.length - 1 || !pending.isEmpty()) {
+      while (barIndex < barFrames.length - 1 && pending.size() < maxPending) {
+        int barEnd = barIndex + 1;
+        while (barEnd < barFrames.length - 1
+            && barFrames[barEnd] - barFrames[barIndex] < (long) sampleRate * RANGE_DURATION) {
+          barEnd++;
+        }
+        long end = barFrames[barEnd];
+        if (barEnd == barFrames.length - 1) {
+          end += latency; // the last bar has to come out of the look-ahead delay as well
+        }
+        pending.add(pool.submit(new RangeTask(this, barIndex, barFrames[barIndex], end)));
+        barIndex = barEnd;
+      }
+      float[] range = pending.remove().join();
+      gainStage.process(range, range.length);
+      int offset = (int) Math.min(range.length, latency - skipped);
+      skipped += offset;
+      writer.write(range, offset, range.length - offset);
+    }
+  }
+
+  /**
+   * Returns the start frames of all bars and the end frame of the last one. The timeline only
+   * depends on the tempo changes, so it is computed once by moving an engine through the track
+   * without rendering any sounds.
+   */
+  private synchronized long[] getBarFrames() {
+    if (barFrames != null) {
+      return barFrames;
+    }
+    Pattern pattern = track.getPattern();
+    int ticksPerBar = pattern.getTickCount();
+    long[] barFrames = new long[track.getTotalBarCount() + 1];
+    long tickCount = (long) ticksPerBar * track.getTotalBarCount();
+    AudioEngine[] engine = new AudioEngine[1];
+    long[] ticks = new long[1];
+    engine[0] = createEngine(tick -> {
+      if (tick.index % ticksPerBar == 0 && tick.index <= tickCount) {
+        barFrames[(int) (tick.index / ticksPerBar)] = tick.frame;
+      }
+      ticks[0] = tick.index + 1;
+    }, engine);
+    while (ticks[0] <= tickCount) {
+      engine[0].skipQuantum();
+    }
+    this.barFrames = barFrames;
+    return barFrames;
+  }
+
+  /**
+   * Creates an engine which changes the tempo in the same places as playback. The engine is
+   * stored in the given holder, so the listener can reach it.
+   */
+  private AudioEngine createEngine(AudioEngine.TickListener listener, AudioEngine[] holder) {
+    holder[0] = new AudioEngine(sampleRate, tick -> {
+      listener.onTick(tick);
+      Pattern changed = track.getChangedPattern(tick);
+      if (changed != null) {
+        holder[0].setPattern(changed);
+      }
+    });
+    holder[0].setPattern(track.getPattern());
+    holder[0].setSounds(sound, tickNormal, tickStrong, tickSub);
+    holder[0].setTickLevels(levelStrong, levelNormal, levelSub);
+    holder[0].reset();
+    return holder[0];
+  }
+
+  private int getMaxSoundLength() {
+    int length = 0;
+    for (FloatBuffer tick : new FloatBuffer[]{tickNormal, tickStrong, tickSub}) {
+      length = tick != null ? Math.max(length, tick.limit()) : length;
+    }
+    return length;
+  }
+
+  /**
+   * Renders the frames of a range without the gain stage. The engine moves through the timeline
+   * without sounds up to a pre-roll, from which on it renders like playback: the pre-roll starts
+   * at a bar before the range, far enough for everything started before it to have ended.
+   */
+  private static class RangeTask extends RecursiveTask<float[]> {
+
+    private static final long serialVersionUID = 1L;
+
+    // tasks are never serialized, they only run in the pool of the renderer
+    private final transient OfflineRenderer renderer;
+    private final int barIndex;
+    private final long start, end;
+
+    RangeTask(OfflineRenderer renderer, int barIndex, long start, long end) {
+      this.renderer = renderer;
+      this.barIndex = barIndex;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected float[] compute() {
+      long[] barFrames = renderer.getBarFrames();
+      long preRoll = renderer.getMaxSoundLength() + AudioEngine.QUANTUM_SIZE;
+      int preRollBar = Math.max(0, barIndex - 1);
+      while (preRollBar > 0 && start - barFrames[preRollBar] < preRoll) {
+        preRollBar--;
+      }
+      AudioEngine engine = renderer.createEngine(tick -> {}, new AudioEngine[1]);
+      while (engine.getFramePosition() + AudioEngine.QUANTUM_SIZE <= barFrames[preRollBar]) {
+        engine.skipQuantum();
+      }
+      float[] range = new float[(int) (end - start)];
+      while (engine.getFramePosition() < end) {
+        long position = engine.getFramePosition();
+        float[] quantum = engine.mixQuantum();
+        long from = Math.max(position, start);
+        long to = Math.min(position + AudioEngine.QUANTUM_SIZE, end);
+        if (from < to) {
+          System.arraycopy(
+              quantum, (int) (from - position), range, (int) (from - start), (int) (to - from)
+          );
+        }
+      }
+      return range;
+    }
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.core;
+
+import java.util.Arrays;
+
+/**
+ * Immutable metronome pattern: tempo, tick types of the beats and of the subdivisions of a beat.
+ * Ticks are counted from the start of playback, the subdivisions of all beats come in between.
+ * The ticks of a bar are compiled to flat arrays once, so the per-tick path only indexes them.
+ */
+public class Pattern {
+
+  public final float tempo;
+  private final String[] beats, subdivisions;
+  // ids of the tick types and beat and subdivision numbers of every tick in a bar
+  private final byte[] tickTypes;
+  private final int[] tickBeats, tickSubdivisions;
+
+  public Pattern(float tempo, String[] beats, String[] subdivisions) {
+    if (tempo <= 0 || beats.length == 0 || subdivisions.length == 0) {
+      throw new IllegalArgumentException("Invalid pattern");
+    }
+    this.tempo = tempo;
+    this.beats = beats.clone();
+    this.subdivisions = subdivisions.clone();
+    int tickCount = beats.length * subdivisions.length;
+    tickTypes = new byte[tickCount];
+    tickBeats = new int[tickCount];
+    tickSubdivisions = new int[tickCount];
+    for (int i = 0; i < tickCount; i++) {
+      int beat = i / subdivisions.length;
+      int subdivision = i % subdivisions.length;
+      tickTypes[i] = (byte) TickType.getId(
+          subdivision == 0 ? beats[beat] : subdivisions[subdivision]
+      );
+      tickBeats[i] = beat + 1;
+      tickSubdivisions[i] = subdivision + 1;
+    }
+  }
+
+  private Pattern(float tempo, Pattern pattern) {
+    if (tempo <= 0) {
+      throw new IllegalArgumentException("Invalid pattern");
+    }
+    this.tempo = tempo;
+    beats = pattern.beats;
+    subdivisions = pattern.subdivisions;
+    tickTypes = pattern.tickTypes;
+    tickBeats = pattern.tickBeats;
+    tickSubdivisions = pattern.tickSubdivisions;
+  }
+
+  /**
+   * Returns the same beats and subdivisions at another tempo, without compiling them again.
+   */
+  public Pattern withTempo(float tempo) {
+    return new Pattern(tempo, this);
+  }
+
+  public int getBeatCount() {
+    return beats.length;
+  }
+
+  public int getSubdivisionCount() {
+    return subdivisions.length;
+  }
+
+  public int getTickCount() {
+    return tickTypes.length;
+  }
+
+  public String getBeat(int index) {
+    return beats[index];
+  }
+
+  public String getSubdivision(int index) {
+    return subdivisions[index];
+  }
+
+  /**
+   * Returns the type of the tick at the given position within a bar.
+   */
+  public String getTickType(int index) {
+    return TickType.getName(tickTypes[index]);
+  }
+
+  /**
+   * Returns the id of the type of the tick at the given position within a bar.
+   */
+  public int getTickTypeId(int index) {
+    return tickTypes[index];
+  }
+
+  /**
+   * Returns the tick with the given index since the start of playback, played at the given frame.
+   */
+  public Tick getTick(long index, long frame) {
+    return getTick(index, frame, new Tick());
+  }
+
+  /**
+   * Writes the tick with the given index since the start of playback into the given slot, so
+   * playback does not have to allocate a tick per period.
+   */
+  Tick getTick(long index, long frame, Tick tick) {
+    int indexInBar = (int) (index % tickTypes.length);
+    tick.set(
+        index,
+        tickBeats[indexInBar],
+        tickSubdivisions[indexInBar],
+        tickTypes[indexInBar],
+        tempo,
+        frame
+    );
+    return tick;
+  }
+
+  /**
+   * Returns the exact length of a tick period in frames, the fraction has to be carried over to
+   * keep the ticks on the grid.
+   */
+  public double getPeriodExact(int sampleRate) {
+    return 60d * sampleRate / (tempo * subdivisions.length);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    } else if (!(o instanceof Pattern)) {
+      return false;
+    }
+    Pattern pattern = (Pattern) o;
+    return tempo == pattern.tempo
+        && Arrays.equals(beats, pattern.beats)
+        && Arrays.equals(subdivisions, pattern.subdivisions);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = Float.floatToIntBits(tempo);
+    result = 31 * result + Arrays.hashCode(beats);
+    result = 31 * result + Arrays.hashCode(subdivisions);
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return tempo + "|" + Arrays.toString(beats) + "|" + Arrays.toString(subdivisions);
+  }
+}
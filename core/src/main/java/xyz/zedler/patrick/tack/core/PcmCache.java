@@ -0,0 +1,159 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Files of raw mono float PCM in native byte order, for sounds which should not take up space in
+ * the heap. Files are written in blocks and mapped read-only for playback, so the sounds can be
+ * longer than what fits into the heap.
+ */
+public final class PcmCache {
+
+  // silence at both ends is trimmed down to this fraction of the peak
+  private static final float TRIM_LEVEL = 0.001f;
+  private static final float PEAK = 0.9f;
+  private static final int BYTES_PER_SAMPLE = 4;
+
+  private PcmCache() {
+  }
+
+  /**
+   * Maps the file read-only, the mapping stays valid after this method returns.
+   */
+  public static FloatBuffer map(File file) throws IOException {
+    try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+      FileChannel channel = input.getChannel();
+      MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+      return buffer.order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+  }
+
+  /**
+   * Trims the silence at both ends of the source, normalizes it and resamples it to the sample
+   * rate into the target file. The target is replaced at once, so it is either complete or
+   * missing. Returns false if the source is silent.
+   */
+  public static boolean process(File source, int sourceRate, File target, int sampleRate)
+      throws IOException {
+    FloatBuffer data = map(source);
+    float peak = 0;
+    for (int i = 0; i < data.limit(); i++) {
+      peak = Math.max(peak, Math.abs(data.get(i)));
+    }
+    if (peak == 0) {
+      return false;
+    }
+    float threshold = peak * TRIM_LEVEL;
+    int first = 0;
+    while (Math.abs(data.get(first)) < threshold) {
+      first++;
+    }
+    int last = data.limit() - 1;
+    while (Math.abs(data.get(last)) < threshold) {
+      last--;
+    }
+    FloatBuffer trimmed = data.duplicate();
+    trimmed.limit(last + 1).position(first);
+    trimmed = trimmed.slice();
+
+    double step = (double) sourceRate / sampleRate;
+    int length = Resampler.getLength(trimmed.limit(), step);
+    if (length == 0) {
+      return false;
+    }
+    File temp = new File(target.getPath() + ".tmp");
+    try (RandomAccessFile output = new RandomAccessFile(temp, "rw")) {
+      output.setLength((long) length * BYTES_PER_SAMPLE);
+      MappedByteBuffer buffer = output.getChannel().map(
+          MapMode.READ_WRITE, 0, (long) length * BYTES_PER_SAMPLE
+      );
+      Resampler.resample(
+          trimmed, step, PEAK / peak, buffer.order(ByteOrder.nativeOrder()).asFloatBuffer()
+      );
+      buffer.force();
+    }
+    if (!temp.renameTo(target)) {
+      throw new IOException("Could not replace " + target);
+    }
+    return true;
+  }
+
+  /**
+   * Streams frames to a new file through a small buffer.
+   */
+  public static class Writer implements Closeable {
+
+    private static final int BLOCK_SIZE_IN_FRAMES = 16384;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE_IN_FRAMES * BYTES_PER_SAMPLE)
+        .order(ByteOrder.nativeOrder());
+    private long frameCount;
+
+    public Writer(File file) throws IOException {
+      this.file = new RandomAccessFile(file, "rw");
+      this.file.setLength(0);
+      channel = this.file.getChannel();
+    }
+
+    public void write(float[] data, int offset, int length) throws IOException {
+      for (int i = 0; i < length; i++) {
+        if (!buffer.hasRemaining()) {
+          flush();
+        }
+        buffer.putFloat(data[offset + i]);
+      }
+      frameCount += length;
+    }
+
+    public long getFrameCount() {
+      return frameCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        flush();
+      } finally {
+        file.close();
+      }
+    }
+
+    private void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+  }
+}
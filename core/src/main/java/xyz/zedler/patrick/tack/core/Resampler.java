@@ -0,0 +1,135 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.core;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Band-limited resampler based on a Kaiser-windowed sinc filter. The filter is stored in a
+ * precomputed table and interpolated between its phases, so arbitrary ratios are possible.
+ * Meant to be run once at load time, not on the audio thread.
+ */
+public class Resampler {
+
+  private static final int ZERO_CROSSINGS = 16;
+  private static final int PHASES = 512;
+  private static final double KAISER_BETA = 8;
+  // cutoff slightly below Nyquist, so the transition band of the filter does not alias
+  private static final double ROLLOFF = 0.95;
+  private static final float[] FILTER = createFilter();
+
+  private Resampler() {
+  }
+
+  /**
+   * Resamples the data with the given step, which is the distance between two output samples
+   * measured in input samples. Steps greater than 1 shorten the sound and raise its pitch.
+   */
+  public static float[] resample(float[] data, double step) {
+    if (step == 1) {
+      return data;
+    }
+    float[] resampled = new float[getLength(data.length, step)];
+    resample(FloatBuffer.wrap(data), step, 1, FloatBuffer.wrap(resampled));
+    return resampled;
+  }
+
+  /**
+   * Returns the number of frames the given number of frames is resampled to.
+   */
+  public static int getLength(int length, double step) {
+    return (int) (length / step);
+  }
+
+  /**
+   * Resamples the data into the output and scales it by the gain. The output has to hold the
+   * resampled length. Both buffers are only accessed with absolute gets and puts, so they can be
+   * memory-mapped files of any size.
+   */
+  public static void resample(FloatBuffer data, double step, float gain, FloatBuffer output) {
+    int length = data.limit();
+    int resampledLength = getLength(length, step);
+    if (step == 1) {
+      for (int i = 0; i < resampledLength; i++) {
+        output.put(i, data.get(i) * gain);
+      }
+      return;
+    }
+    // when decimating, the cutoff has to follow the lower Nyquist frequency of the output
+    double cutoff = ROLLOFF * Math.min(1, 1 / step);
+    double radius = ZERO_CROSSINGS / cutoff;
+    for (int i = 0; i < resampledLength; i++) {
+      double position = i * step;
+      int first = Math.max(0, (int) Math.ceil(position - radius));
+      int last = Math.min(length - 1, (int) Math.floor(position + radius));
+      double sum = 0;
+      for (int j = first; j <= last; j++) {
+        sum += data.get(j) * getCoefficient(Math.abs(position - j) * cutoff);
+      }
+      output.put(i, (float) (sum * cutoff * gain));
+    }
+  }
+
+  /**
+   * Resamples the data from one sample rate to another and shifts its pitch by the given number
+   * of semitones.
+   */
+  public static float[] resample(float[] data, int sampleRateIn, int sampleRateOut, int pitch) {
+    return resample(data, sampleRateIn * Math.pow(2, pitch / 12d) / sampleRateOut);
+  }
+
+  /**
+   * Returns the filter value at the given distance from the center, measured in zero crossings.
+   */
+  private static double getCoefficient(double distance) {
+    double index = distance * PHASES;
+    int phase = (int) index;
+    if (phase >= FILTER.length - 1) {
+      return 0;
+    }
+    return FILTER[phase] + (FILTER[phase + 1] - FILTER[phase]) * (index - phase);
+  }
+
+  private static float[] createFilter() {
+    float[] filter = new float[ZERO_CROSSINGS * PHASES + 1];
+    double besselBeta = bessel(KAISER_BETA);
+    for (int i = 0; i < filter.length; i++) {
+      double x = (double) i / PHASES;
+      double sinc = i == 0 ? 1 : Math.sin(Math.PI * x) / (Math.PI * x);
+      double ratio = x / ZERO_CROSSINGS;
+      double window = bessel(KAISER_BETA * Math.sqrt(Math.max(0, 1 - ratio * ratio)));
+      filter[i] = (float) (sinc * window / besselBeta);
+    }
+    return filter;
+  }
+
+  /**
+   * Modified Bessel function of the first kind and order zero, used for the Kaiser window.
+   */
+  private static double bessel(double x) {
+    double sum = 1;
+    double term = 1;
+    for (int k = 1; k < 32; k++) {
+      term *= x / 2 / k;
+      sum += term * term;
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.core;
+
+/**
+ * Tick of a pattern. Ticks passed around during playback are slots of a {@link TickRing}, which
+ * are reused, so they must not be modified and have to be copied to be kept.
+ */
+public class Tick {
+
+  // volatile, so the sequence check of the ring also covers the fields of a reused slot
+  public volatile long index;
+  public volatile int beat, subdivision;
+  public volatile String type;
+  public volatile int typeId;
+  public volatile float tempo;
+  // position on the timeline of the engine, the sound starts after the latency of the engine
+  public volatile long frame;
+  // identifies the tick within its ring, odd while the slot is being written
+  public volatile int sequence;
+
+  /**
+   * Creates an empty tick, e.g. to copy ticks of a ring into.
+   */
+  public Tick() {
+    type = TickType.NORMAL;
+  }
+
+  public Tick(long index, int beat, int subdivision, int typeId, float tempo, long frame) {
+    set(index, beat, subdivision, typeId, tempo, frame);
+  }
+
+  public Tick(Tick tick) {
+    this(tick.index, tick.beat, tick.subdivision, tick.typeId, tick.tempo, tick.frame);
+    sequence = tick.sequence;
+  }
+
+  void set(long index, int beat, int subdivision, int typeId, float tempo, long frame) {
+    this.index = index;
+    this.beat = beat;
+    this.subdivision = subdivision;
+    this.typeId = typeId;
+    type = TickType.getName(typeId);
+    this.tempo = tempo;
+    this.frame = frame;
+  }
+
+  @Override
+  public String toString() {
+    return "Tick{index = " + index +
+        ", sequence=" + sequence +
+        ", beat=" + beat +
+        ", sub=" + subdivision +
+        ", type=" + type +
+        ", tempo=" + tempo +
+        ", frame=" + frame + '}';
+  }
+}
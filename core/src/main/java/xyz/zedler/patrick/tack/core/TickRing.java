@@ -0,0 +1,89 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.core;
+
+/**
+ * Fixed ring of reusable tick slots, written by the render thread and read by the consumers of
+ * the ticks later on. Every written tick gets the next sequence number, which is handed to the
+ * consumers instead of the tick itself, so the tick pipeline does not allocate during playback.
+ * A slot is reused after CAPACITY further ticks. While a slot is written, its sequence number is
+ * odd, and consumers copy a tick out of the ring and check the sequence number again afterwards,
+ * so a tick whose slot has been reused in the meantime is dropped instead of mixed up.
+ */
+public class TickRing {
+
+  // several seconds of ticks at the highest tempo with the most subdivisions
+  public static final int CAPACITY = 1024;
+  // sequence numbers are even, the odd number in between marks a slot which is being written
+  public static final int SEQUENCE_STEP = 2;
+  private static final int MASK = CAPACITY - 1;
+
+  private final Tick[] slots = new Tick[CAPACITY];
+  private int sequence;
+
+  public TickRing() {
+    for (int i = 0; i < CAPACITY; i++) {
+      slots[i] = new Tick();
+      // no slot holds a valid tick before it has been written
+      slots[i].sequence = 1;
+    }
+  }
+
+  /**
+   * Returns the slot for the next tick, marked as being written until it is published. Only to
+   * be called by the render thread.
+   */
+  Tick next() {
+    Tick tick = slots[getSlot(sequence)];
+    tick.sequence = sequence + 1;
+    return tick;
+  }
+
+  /**
+   * Makes the written slot returned by next() visible to the consumers with its sequence number.
+   * Sequence numbers wrap around and are only compared for equality and order.
+   */
+  Tick publish(Tick tick) {
+    tick.sequence = sequence;
+    sequence += SEQUENCE_STEP;
+    return tick;
+  }
+
+  /**
+   * Copies the tick with the given sequence number into the given tick and returns it, or null
+   * if its slot has been reused, also if that happened while copying.
+   */
+  public Tick get(int sequence, Tick target) {
+    if ((sequence & 1) != 0) {
+      return null;
+    }
+    Tick tick = slots[getSlot(sequence)];
+    if (tick.sequence != sequence) {
+      return null;
+    }
+    target.set(tick.index, tick.beat, tick.subdivision, tick.typeId, tick.tempo, tick.frame);
+    target.sequence = sequence;
+    return tick.sequence == sequence ? target : null;
+  }
+
+  private static int getSlot(int sequence) {
+    return (sequence >>> 1) & MASK;
+  }
+}
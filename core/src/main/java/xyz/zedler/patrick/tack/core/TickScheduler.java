@@ -0,0 +1,113 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.core;
+
+/**
+ * Sample-accurate timeline of the ticks of a pattern. Tick frames are whole frames, the fractional
+ * part of the period is carried over, so the ticks never drift from the exact grid by more than
+ * one frame, no matter how long playback runs.
+ */
+public class TickScheduler {
+
+  private final int sampleRate;
+  private float scheduledTempo;
+  private int scheduledSubdivisionCount;
+  private long tickIndex, tickFrame, lastTickFrame;
+  private double tickFrameFraction, lastTickFrameFraction;
+
+  public TickScheduler(int sampleRate) {
+    this.sampleRate = sampleRate;
+  }
+
+  /**
+   * Rewinds the timeline, the first tick is at frame 0.
+   */
+  public void reset(Pattern pattern) {
+    tickIndex = 0;
+    tickFrame = 0;
+    tickFrameFraction = 0;
+    lastTickFrame = 0;
+    lastTickFrameFraction = 0;
+    scheduledTempo = pattern.tempo;
+    scheduledSubdivisionCount = pattern.getSubdivisionCount();
+  }
+
+  /**
+   * Returns the frame of the next tick.
+   */
+  public long getTickFrame() {
+    return tickFrame;
+  }
+
+  /**
+   * Returns the index of the next tick.
+   */
+  public long getTickIndex() {
+    return tickIndex;
+  }
+
+  /**
+   * Writes the next tick, which is played at the given frame, into the given slot and moves the
+   * timeline on by one tick period.
+   */
+  public Tick nextTick(Pattern pattern, long frame, Tick tick) {
+    pattern.getTick(tickIndex++, frame, tick);
+    lastTickFrame = tickFrame;
+    lastTickFrameFraction = tickFrameFraction;
+    double frameExact = tickFrameFraction + getPeriodExact(
+        scheduledTempo, scheduledSubdivisionCount
+    );
+    long periodSize = (long) frameExact;
+    tickFrameFraction = frameExact - periodSize;
+    tickFrame += periodSize;
+    return tick;
+  }
+
+  /**
+   * Re-anchors the next tick to the last one if tempo or subdivisions have changed since it was
+   * scheduled, so the change can be heard right away instead of after one tick period.
+   */
+  public void update(Pattern pattern, long framePosition) {
+    float tempo = pattern.tempo;
+    int subdivisionCount = pattern.getSubdivisionCount();
+    if (tempo == scheduledTempo && subdivisionCount == scheduledSubdivisionCount) {
+      return;
+    }
+    scheduledTempo = tempo;
+    scheduledSubdivisionCount = subdivisionCount;
+    if (tickIndex == 0) {
+      return; // first tick is always at the start
+    }
+    double frameExact = lastTickFrameFraction + getPeriodExact(tempo, subdivisionCount);
+    long periodSize = (long) frameExact;
+    if (lastTickFrame + periodSize > framePosition) {
+      tickFrame = lastTickFrame + periodSize;
+      tickFrameFraction = frameExact - periodSize;
+    } else {
+      // new period is already over, start next tick right away
+      tickFrame = framePosition;
+      tickFrameFraction = 0;
+    }
+  }
+
+  private double getPeriodExact(float tempo, int subdivisionCount) {
+    return 60d * sampleRate / (tempo * subdivisionCount);
+  }
+}
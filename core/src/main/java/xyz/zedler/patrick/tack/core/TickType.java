@@ -0,0 +1,62 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.core;
+
+/**
+ * Tick types as stored in the beat and subdivision patterns. Compiled patterns and the audio
+ * thread use the ids instead, so ticks can be handled without string comparisons.
+ */
+public final class TickType {
+
+  public static final String NORMAL = "normal";
+  public static final String STRONG = "strong";
+  public static final String SUB = "sub";
+  public static final String MUTED = "muted";
+
+  public static final int ID_NORMAL = 0;
+  public static final int ID_STRONG = 1;
+  public static final int ID_SUB = 2;
+  public static final int ID_MUTED = 3;
+
+  private static final String[] NAMES = {NORMAL, STRONG, SUB, MUTED};
+
+  private TickType() {
+  }
+
+  /**
+   * Returns the id of the tick type, unknown types are played as normal ticks.
+   */
+  public static int getId(String type) {
+    switch (type) {
+      case STRONG:
+        return ID_STRONG;
+      case SUB:
+        return ID_SUB;
+      case MUTED:
+        return ID_MUTED;
+      default:
+        return ID_NORMAL;
+    }
+  }
+
+  public static String getName(int id) {
+    return NAMES[id];
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.core;
+
+/**
+ * Conversions between tempo, bars and milliseconds for everything that is timed in bars, like
+ * count-in, timer and incremental tempo changes.
+ */
+public final class Timing {
+
+  private Timing() {
+  }
+
+  /**
+   * Returns the exact length of a beat in milliseconds.
+   */
+  public static double getBeatInterval(float tempo) {
+    return 1000 * 60d / tempo;
+  }
+
+  /**
+   * Returns the length of the given number of bars in whole milliseconds.
+   */
+  public static long getBarsInterval(float tempo, int beatCount, int bars) {
+    return (long) (getBeatInterval(tempo) * beatCount * bars);
+  }
+
+  /**
+   * Returns the index of the bar the tick belongs to, counted from the start of playback.
+   */
+  public static long getBarIndex(Tick tick, int beatCount, int subdivisionCount) {
+    return tick.index / subdivisionCount / beatCount;
+  }
+
+  /**
+   * Returns true if the tick starts a bar after the count-in at which the tempo has to be changed
+   * when it is changed every given number of bars.
+   */
+  public static boolean isIncrementalBar(
+      Tick tick, int beatCount, int subdivisionCount, int countIn, int interval
+  ) {
+    boolean isFirstTickOfBar = tick.index % ((long) beatCount * subdivisionCount) == 0;
+    if (!isFirstTickOfBar || interval <= 0) {
+      return false;
+    }
+    long barIndex = getBarIndex(tick, beatCount, subdivisionCount) - countIn;
+    return barIndex >= interval && barIndex % interval == 0;
+  }
+}
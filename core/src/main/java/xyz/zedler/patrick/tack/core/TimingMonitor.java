@@ -0,0 +1,197 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.core;
+
+import java.util.Locale;
+
+/**
+ * Compares the frames on the timeline of the engine at which tick sounds start with the times
+ * the output reports them as presented. Keeps rolling statistics on the drift of the audio clock
+ * against the system clock, on the jitter between ticks and on slips caused by underruns.
+ */
+public class TimingMonitor {
+
+  // ticks waiting for a timestamp, the oldest is dropped if timestamps stop arriving
+  private static final int PENDING_SIZE = 64;
+  // recent tick steps the jitter is computed over
+  private static final int WINDOW_SIZE = 64;
+  // a step of the presentation time this large is no jitter anymore but a gap in the output
+  private static final double SLIP_THRESHOLD = 2;
+
+  private final int sampleRate;
+  private final long[] pendingFrames = new long[PENDING_SIZE];
+  private final double[] steps = new double[WINDOW_SIZE];
+  private int pendingStart, pendingCount, stepIndex, stepCount, slipCount, underrunCount;
+  private long timestampFrame, timestampNanos, anchorFrame, anchorNanos, tickCount;
+  private boolean hasTimestamp, hasAnchor;
+  private double offset, drift, driftMax, slipDuration, anchorDrift, anchorSlipDuration;
+
+  public TimingMonitor(int sampleRate) {
+    this.sampleRate = sampleRate;
+  }
+
+  public synchronized void reset() {
+    pendingStart = 0;
+    pendingCount = 0;
+    stepIndex = 0;
+    stepCount = 0;
+    slipCount = 0;
+    underrunCount = 0;
+    tickCount = 0;
+    hasTimestamp = false;
+    hasAnchor = false;
+    offset = 0;
+    drift = 0;
+    driftMax = 0;
+    slipDuration = 0;
+    anchorDrift = 0;
+    anchorSlipDuration = 0;
+  }
+
+  /**
+   * Starts a new timeline of timestamps, e.g. after the output device has changed. The latency
+   * of the new device is not counted as drift, the statistics continue from where they are.
+   */
+  public synchronized void reanchor() {
+    hasTimestamp = false;
+    hasAnchor = false;
+    anchorDrift = drift;
+    anchorSlipDuration = slipDuration;
+    offset = 0;
+  }
+
+  /**
+   * Adds a tick whose sound starts at the given frame on the timeline of the engine.
+   */
+  public synchronized void onTick(long frame) {
+    if (pendingCount == PENDING_SIZE) {
+      pendingStart = (pendingStart + 1) % PENDING_SIZE;
+      pendingCount--;
+    }
+    pendingFrames[(pendingStart + pendingCount) % PENDING_SIZE] = frame;
+    pendingCount++;
+  }
+
+  /**
+   * Adds a timestamp of the output, the frame on the timeline of the engine which has been
+   * presented at the given system time. All ticks up to this frame are evaluated.
+   */
+  public synchronized void onTimestamp(long frame, long nanoTime) {
+    if (hasTimestamp && frame <= timestampFrame) {
+      return; // output is not running or has not moved on since the last timestamp
+    }
+    hasTimestamp = true;
+    timestampFrame = frame;
+    timestampNanos = nanoTime;
+    while (pendingCount > 0 && pendingFrames[pendingStart] <= frame) {
+      evaluateTick(pendingFrames[pendingStart]);
+      pendingStart = (pendingStart + 1) % PENDING_SIZE;
+      pendingCount--;
+    }
+  }
+
+  /**
+   * Sets the number of underruns the output has reported since playback started.
+   */
+  public synchronized void onUnderruns(int count) {
+    underrunCount = count;
+  }
+
+  public synchronized Stats getStats() {
+    double sum = 0, max = 0;
+    for (int i = 0; i < stepCount; i++) {
+      sum += steps[i] * steps[i];
+      max = Math.max(max, Math.abs(steps[i]));
+    }
+    double jitter = stepCount > 0 ? Math.sqrt(sum / stepCount) : 0;
+    return new Stats(
+        tickCount, drift, driftMax, jitter, max, slipCount, slipDuration, underrunCount
+    );
+  }
+
+  /**
+   * Compares the presentation time of the tick with the time it should have been presented at,
+   * counted from the first evaluated tick with the nominal sample rate.
+   */
+  private void evaluateTick(long frame) {
+    long presentationNanos = timestampNanos - (timestampFrame - frame) * 1000000000L / sampleRate;
+    boolean isAnchor = !hasAnchor;
+    if (isAnchor) {
+      hasAnchor = true;
+      anchorFrame = frame;
+      anchorNanos = presentationNanos;
+    }
+    long nominalNanos = anchorNanos + (frame - anchorFrame) * 1000000000L / sampleRate;
+    double offset = (presentationNanos - nominalNanos) / 1e6;
+    double step = offset - this.offset;
+    this.offset = offset;
+    if (!isAnchor && Math.abs(step) >= SLIP_THRESHOLD) {
+      slipCount++;
+      slipDuration += step;
+    } else if (!isAnchor) {
+      steps[stepIndex] = step;
+      stepIndex = (stepIndex + 1) % WINDOW_SIZE;
+      stepCount = Math.min(stepCount + 1, WINDOW_SIZE);
+    }
+    drift = anchorDrift + offset - (slipDuration - anchorSlipDuration);
+    driftMax = Math.max(driftMax, Math.abs(drift));
+    tickCount++;
+  }
+
+  /**
+   * Snapshot of the statistics, all durations in milliseconds.
+   */
+  public static class Stats {
+
+    // number of ticks compared with their presentation time
+    public final long tickCount;
+    // offset of the last tick from the nominal timeline, not counting slips
+    public final double drift, driftMax;
+    // root mean square and maximum of the deviations between recent ticks
+    public final double jitter, jitterMax;
+    public final int slipCount;
+    public final double slipDuration;
+    public final int underrunCount;
+
+    public Stats(
+        long tickCount, double drift, double driftMax, double jitter, double jitterMax,
+        int slipCount, double slipDuration, int underrunCount
+    ) {
+      this.tickCount = tickCount;
+      this.drift = drift;
+      this.driftMax = driftMax;
+      this.jitter = jitter;
+      this.jitterMax = jitterMax;
+      this.slipCount = slipCount;
+      this.slipDuration = slipDuration;
+      this.underrunCount = underrunCount;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.ENGLISH,
+          "Stats{ticks=%d, drift=%.2f ms (max %.2f), jitter=%.2f ms (max %.2f), "
+              + "slips=%d (%.1f ms), underruns=%d}",
+          tickCount, drift, driftMax, jitter, jitterMax, slipCount, slipDuration, underrunCount
+      );
+    }
+  }
+}
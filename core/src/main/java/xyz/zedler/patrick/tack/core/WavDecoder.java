@@ -0,0 +1,183 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Streaming RIFF/WAVE decoder for PCM16, PCM24 and float32 data. The samples are decoded block
+ * by block straight into the destination array, multiple channels are mixed down to mono.
+ */
+public class WavDecoder {
+
+  private static final int FORMAT_PCM = 1;
+  private static final int FORMAT_FLOAT = 3;
+  private static final int FORMAT_EXTENSIBLE = 0xFFFE;
+  private static final int BLOCK_SIZE_IN_FRAMES = 4096;
+
+  private WavDecoder() {
+  }
+
+  public static Wav decode(ReadableByteChannel channel) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(40).order(ByteOrder.LITTLE_ENDIAN);
+    readChunk(channel, header, 12);
+    if (header.getInt() != fourCc("RIFF")) {
+      throw new IOException("Missing RIFF header");
+    }
+    header.getInt(); // size of the whole file
+    if (header.getInt() != fourCc("WAVE")) {
+      throw new IOException("Missing WAVE format");
+    }
+    int format = -1, channelCount = 0, sampleRate = 0, blockAlign = 0, bitsPerSample = 0;
+    while (true) {
+      readChunk(channel, header, 8);
+      int id = header.getInt();
+      long size = header.getInt() & 0xFFFFFFFFL;
+      if (id == fourCc("fmt ") && size >= 16) {
+        readChunk(channel, header, (int) Math.min(size, header.capacity()));
+        format = header.getShort() & 0xFFFF;
+        channelCount = header.getShort() & 0xFFFF;
+        sampleRate = header.getInt();
+        header.getInt(); // byte rate
+        blockAlign = header.getShort() & 0xFFFF;
+        bitsPerSample = header.getShort() & 0xFFFF;
+        if (format == FORMAT_EXTENSIBLE && size >= 26) {
+          header.position(24); // first two bytes of the sub format GUID are the format tag
+          format = header.getShort() & 0xFFFF;
+        }
+        skip(channel, size - Math.min(size, header.capacity()) + (size & 1));
+      } else if (id == fourCc("data")) {
+        if (format < 0) {
+          throw new IOException("Missing fmt chunk before data chunk");
+        }
+        return new Wav(
+            readData(channel, size, format, channelCount, blockAlign, bitsPerSample), sampleRate
+        );
+      } else {
+        skip(channel, size + (size & 1)); // chunks are padded to an even size
+      }
+    }
+  }
+
+  private static float[] readData(
+      ReadableByteChannel channel, long size, int format, int channelCount, int blockAlign,
+      int bitsPerSample
+  ) throws IOException {
+    int bytesPerSample = bitsPerSample / 8;
+    boolean supported = (format == FORMAT_PCM && (bitsPerSample == 16 || bitsPerSample == 24))
+        || (format == FORMAT_FLOAT && bitsPerSample == 32);
+    if (!supported || channelCount < 1 || blockAlign < channelCount * bytesPerSample) {
+      throw new IOException(
+          "Unsupported format " + format + " with " + bitsPerSample + " bits per sample"
+      );
+    }
+    float[] data = new float[(int) Math.min(size / blockAlign, Integer.MAX_VALUE)];
+    ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE_IN_FRAMES * blockAlign)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    int frame = 0;
+    boolean truncated = false;
+    while (frame < data.length && !truncated) {
+      buffer.clear();
+      buffer.limit(Math.min(BLOCK_SIZE_IN_FRAMES, data.length - frame) * blockAlign);
+      while (buffer.hasRemaining() && !truncated) {
+        truncated = channel.read(buffer) < 0;
+      }
+      buffer.flip();
+      int frames = buffer.remaining() / blockAlign;
+      for (int i = 0; i < frames; i++, frame++) {
+        int start = i * blockAlign;
+        float sum = 0;
+        for (int c = 0; c < channelCount; c++) {
+          sum += readSample(buffer, start + c * bytesPerSample, format, bitsPerSample);
+        }
+        data[frame] = sum / channelCount;
+      }
+    }
+    // data chunk may be shorter than declared, keep what has been read
+    return frame < data.length ? Arrays.copyOf(data, frame) : data;
+  }
+
+  private static float readSample(ByteBuffer buffer, int index, int format, int bitsPerSample) {
+    if (format == FORMAT_FLOAT) {
+      return buffer.getFloat(index);
+    } else if (bitsPerSample == 16) {
+      return buffer.getShort(index) / 32768f;
+    } else {
+      int sample = (buffer.get(index) & 0xFF)
+          | (buffer.get(index + 1) & 0xFF) << 8
+          | buffer.get(index + 2) << 16; // sign extended by the most significant byte
+      return sample / 8388608f;
+    }
+  }
+
+  private static void readChunk(ReadableByteChannel channel, ByteBuffer buffer, int size)
+      throws IOException {
+    buffer.clear();
+    buffer.limit(size);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        throw new EOFException("Unexpected end of WAV data");
+      }
+    }
+    buffer.flip();
+  }
+
+  private static void skip(ReadableByteChannel channel, long count) throws IOException {
+    if (count <= 0) {
+      return;
+    }
+    if (channel instanceof FileChannel) {
+      FileChannel fileChannel = (FileChannel) channel;
+      fileChannel.position(fileChannel.position() + count);
+      return;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(count, 4096));
+    while (count > 0) {
+      buffer.clear();
+      buffer.limit((int) Math.min(count, buffer.capacity()));
+      int read = channel.read(buffer);
+      if (read < 0) {
+        throw new EOFException("Unexpected end of WAV data");
+      }
+      count -= read;
+    }
+  }
+
+  private static int fourCc(String id) {
+    return id.charAt(0) | id.charAt(1) << 8 | id.charAt(2) << 16 | id.charAt(3) << 24;
+  }
+
+  public static class Wav {
+
+    public final float[] data;
+    public final int sampleRate;
+
+    public Wav(float[] data, int sampleRate) {
+      this.data = data;
+      this.sampleRate = sampleRate;
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Streams mono 32-bit float audio as a WAV file to a channel. The length has to be known up front,
+ * so the header can be written first and the channel does not need to be seekable. Only a small
+ * block is buffered, independent of the length of the file.
+ */
+public class WavWriter implements Closeable {
+
+  private static final int FORMAT_FLOAT = 3;
+  private static final int BYTES_PER_SAMPLE = 4;
+  private static final int HEADER_SIZE = 44;
+  private static final int BLOCK_SIZE_IN_FRAMES = 16384;
+
+  private final WritableByteChannel channel;
+  private final long frameCount;
+  private final ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE_IN_FRAMES * BYTES_PER_SAMPLE)
+      .order(ByteOrder.LITTLE_ENDIAN);
+  private long framesWritten;
+
+  public WavWriter(WritableByteChannel channel, int sampleRate, long frameCount)
+      throws IOException {
+    long dataSize = frameCount * BYTES_PER_SAMPLE;
+    if (frameCount < 0 || HEADER_SIZE - 8 + dataSize > 0xFFFFFFFFL) {
+      throw new IOException("Unsupported length of " + frameCount + " frames");
+    }
+    this.channel = channel;
+    this.frameCount = frameCount;
+    buffer.putInt(fourCc("RIFF"));
+    buffer.putInt((int) (HEADER_SIZE - 8 + dataSize));
+    buffer.putInt(fourCc("WAVE"));
+    buffer.putInt(fourCc("fmt "));
+    buffer.putInt(16);
+    buffer.putShort((short) FORMAT_FLOAT);
+    buffer.putShort((short) 1); // mono
+    buffer.putInt(sampleRate);
+    buffer.putInt(sampleRate * BYTES_PER_SAMPLE); // byte rate
+    buffer.putShort((short) BYTES_PER_SAMPLE); // block align
+    buffer.putShort((short) (BYTES_PER_SAMPLE * 8));
+    buffer.putInt(fourCc("data"));
+    buffer.putInt((int) dataSize);
+  }
+
+  public long getFrameCount() {
+    return frameCount;
+  }
+
+  public void write(float[] data, int offset, int length) throws IOException {
+    if (framesWritten + length > frameCount) {
+      throw new IOException("More frames than declared in the header");
+    }
+    for (int i = 0; i < length; i++) {
+      if (!buffer.hasRemaining()) {
+        flush();
+      }
+      buffer.putFloat(data[offset + i]);
+    }
+    framesWritten += length;
+  }
+
+  /**
+   * Writes the buffered frames and closes the channel. Fails if fewer frames have been written
+   * than declared, the file would be invalid otherwise.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+      if (framesWritten < frameCount) {
+        throw new IOException("Only " + framesWritten + " of " + frameCount + " frames written");
+      }
+    } finally {
+      channel.close();
+    }
+  }
+
+  private void flush() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  private static int fourCc(String id) {
+    return id.charAt(0) | id.charAt(1) << 8 | id.charAt(2) << 16 | id.charAt(3) << 24;
+  }
+}
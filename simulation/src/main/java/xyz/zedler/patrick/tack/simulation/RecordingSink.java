@@ -0,0 +1,98 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.simulation;
+
+import java.util.Arrays;
+import xyz.zedler.patrick.tack.core.AudioSink;
+
+/**
+ * Sink which is played at the pace of the virtual clock and records the frames at which sounds
+ * start instead of the audio itself, so hours of playback fit into memory.
+ */
+class RecordingSink implements AudioSink {
+
+  private static final float ONSET_THRESHOLD = 1e-4f;
+  // minimum silence before a sound, shorter gaps belong to the same sound
+  private static final int ONSET_GAP = 64;
+
+  private final VirtualClock clock;
+  private final int sampleRate, fillTarget;
+  private long framesWritten;
+  private int silentFrames = ONSET_GAP;
+  private long[] onsets = new long[64];
+  private int onsetCount;
+
+  RecordingSink(VirtualClock clock, int sampleRate, int fillTarget) {
+    this.clock = clock;
+    this.sampleRate = sampleRate;
+    this.fillTarget = fillTarget;
+  }
+
+  @Override
+  public int getSampleRate() {
+    return sampleRate;
+  }
+
+  @Override
+  public int getFillLevel() {
+    return (int) (framesWritten - clock.getFrames());
+  }
+
+  @Override
+  public int getFillTarget() {
+    return fillTarget;
+  }
+
+  @Override
+  public int write(float[] data, int offset, int length) {
+    int count = Math.max(0, Math.min(length, fillTarget - getFillLevel()));
+    for (int i = 0; i < count; i++) {
+      if (Math.abs(data[offset + i]) > ONSET_THRESHOLD) {
+        if (silentFrames >= ONSET_GAP) {
+          addOnset(framesWritten + i);
+        }
+        silentFrames = 0;
+      } else {
+        silentFrames++;
+      }
+    }
+    framesWritten += count;
+    return count;
+  }
+
+  long getFramesWritten() {
+    return framesWritten;
+  }
+
+  int getOnsetCount() {
+    return onsetCount;
+  }
+
+  long getOnset(int index) {
+    return onsets[index];
+  }
+
+  private void addOnset(long frame) {
+    if (onsetCount == onsets.length) {
+      onsets = Arrays.copyOf(onsets, onsetCount * 2);
+    }
+    onsets[onsetCount++] = frame;
+  }
+}
@@ -0,0 +1,433 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.simulation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.FloatBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import xyz.zedler.patrick.tack.core.AudioEngine;
+import xyz.zedler.patrick.tack.core.ClickTrack;
+import xyz.zedler.patrick.tack.core.LatencyDetector;
+import xyz.zedler.patrick.tack.core.MemorySink;
+import xyz.zedler.patrick.tack.core.OfflineRenderer;
+import xyz.zedler.patrick.tack.core.Pattern;
+import xyz.zedler.patrick.tack.core.Tick;
+import xyz.zedler.patrick.tack.core.TickScheduler;
+import xyz.zedler.patrick.tack.core.TickType;
+import xyz.zedler.patrick.tack.core.Timing;
+import xyz.zedler.patrick.tack.core.WavDecoder;
+import xyz.zedler.patrick.tack.core.WavWriter;
+
+/**
+ * Plays the engine on a virtual clock for every tempo the app supports and checks the timing of
+ * the ticks, the count-in, the timer and incremental tempo changes. The results are written as
+ * CSV report, the process exits with 1 if any check has failed. Offline rendering of click tracks
+ * is compared with playback of the same tracks at the end, and the latency detection of the
+ * calibration is run on recordings with a known delay.
+ */
+public class Simulation {
+
+  private static final int SAMPLE_RATE = 48000;
+  // range of the tempo picker and maximum number of subdivisions in the app
+  private static final int TEMPO_MIN = 1;
+  private static final int TEMPO_MAX = 500;
+  private static final int SUBS_MAX = 10;
+  // output is played in bursts of this size, each followed by a fill of the buffer
+  private static final int BURST_SIZE = 96;
+  private static final int FILL_TARGET = BURST_SIZE * 4;
+  private static final int COUNT_IN = 1;
+  private static final int TIMER_DURATION = 2;
+  private static final int INCREMENTAL_INTERVAL = 1;
+  private static final int INCREMENTAL_CHANGES = 2;
+  private static final String[] BEATS = {TickType.STRONG, TickType.NORMAL};
+  private static final String[] SUBDIVISIONS = {TickType.MUTED};
+  // same search range and threshold as the latency calibration in the app
+  private static final int LATENCY_MAX = SAMPLE_RATE * 50 / 1000;
+  private static final double CORRELATION_MIN = 0.3;
+
+  private final FloatBuffer click, ring;
+
+  public static void main(String[] args) throws IOException {
+    double hours = 4;
+    File report = new File("simulation-report.csv");
+    for (int i = 0; i < args.length - 1; i += 2) {
+      if (args[i].equals("--hours")) {
+        hours = Double.parseDouble(args[i + 1]);
+      } else if (args[i].equals("--report")) {
+        report = new File(args[i + 1]);
+      }
+    }
+    boolean passed = new Simulation().run(hours, report);
+    System.exit(passed ? 0 : 1);
+  }
+
+  private Simulation() {
+    // short decaying click with a sharp attack, so every sound start is found in the output
+    float[] click = new float[SAMPLE_RATE / 500];
+    for (int i = 0; i < click.length; i++) {
+      click[i] = 0.5f * (1 - (float) i / click.length);
+    }
+    this.click = FloatBuffer.wrap(click);
+    // long enough to overlap the next ticks and bars at high tempos
+    float[] ring = new float[SAMPLE_RATE * 3 / 10];
+    for (int i = 0; i < ring.length; i++) {
+      ring[i] = 0.8f * (float) (Math.sin(i * 0.07) * Math.exp(-i * 10d / ring.length));
+    }
+    this.ring = FloatBuffer.wrap(ring);
+  }
+
+  private boolean run(double hours, File report) throws IOException {
+    long start = System.nanoTime();
+    List<Result> results = new ArrayList<>();
+    for (int tempo = TEMPO_MIN; tempo <= TEMPO_MAX; tempo++) {
+      Result result = new Result(tempo);
+      checkDrift(result, hours);
+      checkCountInAndTimer(result);
+      checkIncrementalTempo(result);
+      results.add(result);
+    }
+    int offlineErrors = checkOfflineRender();
+    int latencyErrors = checkLatencyDetection();
+
+    File directory = report.getAbsoluteFile().getParentFile();
+    if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Could not create " + directory);
+    }
+    int failed = 0;
+    try (PrintWriter writer = new PrintWriter(report, "UTF-8")) {
+      writer.println(Result.HEADER);
+      for (Result result : results) {
+        writer.println(result);
+        if (!result.passed()) {
+          failed++;
+          System.out.println("FAILED " + result);
+        }
+      }
+    }
+    System.out.printf(
+        Locale.ENGLISH,
+        "Simulated %.1f hours for each of %d tempos in %.1f s, %d failed, %d offline render "
+            + "errors, %d latency detection errors, report: %s%n",
+        hours, results.size(), (System.nanoTime() - start) / 1e9, failed, offlineErrors,
+        latencyErrors, report
+    );
+    return failed == 0 && offlineErrors == 0 && latencyErrors == 0;
+  }
+
+  /**
+   * Runs the scheduler alone for hours and compares every tick with the exact grid. The drift of
+   * the former scheduling with whole milliseconds per tick is reported for comparison.
+   */
+  private static void checkDrift(Result result, double hours) {
+    long duration = (long) (hours * 3600 * SAMPLE_RATE);
+    for (int subdivisionCount : new int[]{1, SUBS_MAX}) {
+      String[] subdivisions = new String[subdivisionCount];
+      Arrays.fill(subdivisions, TickType.SUB);
+      Pattern pattern = new Pattern(result.tempo, BEATS, subdivisions);
+      TickScheduler scheduler = new TickScheduler(SAMPLE_RATE);
+      scheduler.reset(pattern);
+      Tick tick = pattern.getTick(0, 0);
+      double period = 60d * SAMPLE_RATE / (result.tempo * subdivisionCount);
+      double error = 0;
+      while (scheduler.getTickFrame() < duration) {
+        error = scheduler.getTickFrame() - scheduler.getTickIndex() * period;
+        result.maxScheduleError = Math.max(result.maxScheduleError, Math.abs(error));
+        scheduler.nextTick(pattern, scheduler.getTickFrame(), tick);
+      }
+      double drift = error * 1000 / SAMPLE_RATE;
+      if (Math.abs(drift) > Math.abs(result.drift)) {
+        result.drift = drift;
+      }
+      long ticks = scheduler.getTickIndex();
+      long legacyPeriod = (1000 * 60 / (long) result.tempo) / subdivisionCount;
+      double legacyDrift = ticks * (legacyPeriod - period * 1000 / SAMPLE_RATE);
+      if (Math.abs(legacyDrift) > Math.abs(result.legacyDrift)) {
+        result.legacyDrift = legacyDrift;
+      }
+    }
+  }
+
+  /**
+   * Plays the count-in and a timer in bars and compares the intervals the app waits for in
+   * milliseconds with the rendered audio. Every tick sound has to start exactly at the frame of
+   * its tick plus the latency of the engine.
+   */
+  private void checkCountInAndTimer(Result result) {
+    List<Tick> ticks = new ArrayList<>();
+    AudioEngine engine = new AudioEngine(SAMPLE_RATE, tick -> ticks.add(new Tick(tick)));
+    engine.setPattern(new Pattern(result.tempo, BEATS, SUBDIVISIONS));
+    engine.setSounds("click", click, click, click);
+    engine.reset();
+    int countInEnd = COUNT_IN * BEATS.length;
+    int timerEnd = (COUNT_IN + TIMER_DURATION) * BEATS.length;
+    RecordingSink sink = play(engine, ticks, timerEnd);
+
+    checkPlacement(result, engine, sink, ticks);
+    long countInFrames = ticks.get(countInEnd).frame;
+    result.countInError = Timing.getBarsInterval(result.tempo, BEATS.length, COUNT_IN)
+        - frameToMillis(countInFrames);
+    long timerFrames = ticks.get(timerEnd).frame - countInFrames;
+    result.timerError = Timing.getBarsInterval(result.tempo, BEATS.length, TIMER_DURATION)
+        - frameToMillis(timerFrames);
+  }
+
+  /**
+   * Changes the tempo at the bars the app would change it at and checks that the changes happen
+   * at the start of the right bars and take effect with the following tick.
+   */
+  private void checkIncrementalTempo(Result result) {
+    float change = result.tempo < TEMPO_MAX ? 1 : -1;
+    List<Tick> ticks = new ArrayList<>();
+    List<Tick> changes = new ArrayList<>();
+    AudioEngine[] engine = new AudioEngine[1];
+    engine[0] = new AudioEngine(SAMPLE_RATE, slot -> {
+      // the slot is reused by the engine, the checks run after playback
+      Tick tick = new Tick(slot);
+      ticks.add(tick);
+      boolean isIncrementalBar = Timing.isIncrementalBar(
+          tick, BEATS.length, SUBDIVISIONS.length, COUNT_IN, INCREMENTAL_INTERVAL
+      );
+      if (isIncrementalBar) {
+        changes.add(tick);
+        engine[0].setPattern(new Pattern(tick.tempo + change, BEATS, SUBDIVISIONS));
+      }
+    });
+    engine[0].setPattern(new Pattern(result.tempo, BEATS, SUBDIVISIONS));
+    engine[0].setSounds("click", click, click, click);
+    engine[0].reset();
+    int ticksPerBar = BEATS.length * SUBDIVISIONS.length;
+    int lastChange = (COUNT_IN + INCREMENTAL_INTERVAL * INCREMENTAL_CHANGES) * ticksPerBar;
+    play(engine[0], ticks, lastChange + 1);
+
+    for (int i = 0; i < changes.size(); i++) {
+      Tick tick = changes.get(i);
+      long expectedIndex = (long) (COUNT_IN + INCREMENTAL_INTERVAL * (i + 1)) * ticksPerBar;
+      Tick next = ticks.get((int) tick.index + 1);
+      double period = 60d * SAMPLE_RATE / next.tempo / SUBDIVISIONS.length;
+      boolean changedInPlace = next.tempo == tick.tempo + change
+          && Math.abs(next.frame - tick.frame - period) <= 1;
+      if (tick.index != expectedIndex || tick.beat != 1 || !changedInPlace) {
+        result.incrementalErrors++;
+      }
+    }
+    result.incrementalErrors += Math.abs(INCREMENTAL_CHANGES - changes.size());
+  }
+
+  /**
+   * Renders click tracks with tempo changes offline in parallel and compares them sample for
+   * sample with playback of the same tracks. Returns the number of tracks which differ.
+   */
+  private int checkOfflineRender() throws IOException {
+    String[] beats = {TickType.STRONG};
+    ClickTrack slow = new ClickTrack(new Pattern(20, beats, SUBDIVISIONS), 0, 10);
+    slow.setIncremental(2, 1, false);
+    ClickTrack ramp = new ClickTrack(new Pattern(
+        90, new String[]{TickType.STRONG, TickType.NORMAL, TickType.NORMAL, TickType.NORMAL},
+        new String[]{TickType.MUTED, TickType.SUB}
+    ), 1, 40);
+    ramp.setIncremental(3, 2, true);
+    String[] subdivisions = new String[4];
+    Arrays.fill(subdivisions, TickType.SUB);
+    ClickTrack fast = new ClickTrack(new Pattern(480, BEATS, subdivisions), 2, 200);
+    fast.setIncremental(5, 1, true);
+
+    int errors = 0;
+    for (ClickTrack track : new ClickTrack[]{slow, ramp, fast}) {
+      OfflineRenderer renderer = new OfflineRenderer(SAMPLE_RATE, track);
+      renderer.setSounds("ring", ring, ring, click);
+      // loud enough for the limiter to be busy across the ranges
+      renderer.setTickLevels(2, 1, 0.5f);
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      try (WavWriter writer = new WavWriter(
+          Channels.newChannel(output), SAMPLE_RATE, renderer.getFrameCount()
+      )) {
+        renderer.render(ForkJoinPool.commonPool(), writer);
+      }
+      float[] rendered = WavDecoder.decode(
+          Channels.newChannel(new ByteArrayInputStream(output.toByteArray()))
+      ).data;
+
+      AudioEngine[] engine = new AudioEngine[1];
+      engine[0] = new AudioEngine(SAMPLE_RATE, tick -> {
+        Pattern changed = track.getChangedPattern(tick);
+        if (changed != null) {
+          engine[0].setPattern(changed);
+        }
+      });
+      engine[0].setPattern(track.getPattern());
+      engine[0].setSounds("ring", ring, ring, click);
+      engine[0].setTickLevels(2, 1, 0.5f);
+      engine[0].reset();
+      MemorySink sink = new MemorySink(SAMPLE_RATE, FILL_TARGET);
+      while (sink.getSize() < rendered.length + engine[0].getLatency()) {
+        engine[0].fill(sink);
+        sink.consume(BURST_SIZE);
+      }
+      float[] played = Arrays.copyOfRange(
+          sink.getData(), engine[0].getLatency(), engine[0].getLatency() + rendered.length
+      );
+      if (rendered.length != renderer.getFrameCount() || !Arrays.equals(rendered, played)) {
+        errors++;
+        System.out.println("FAILED offline render of " + track.getPattern());
+      }
+    }
+    return errors;
+  }
+
+  /**
+   * Delays a train of clicks by known lags, adds noise and checks that the latency detector finds
+   * the exact lag with a clear correlation, and that noise alone is rejected. Returns the number
+   * of failed detections.
+   */
+  private static int checkLatencyDetection() {
+    Random random = new Random(42);
+    // noise burst with a fast decay, its autocorrelation has a single sharp peak like real clicks
+    float[] burst = new float[SAMPLE_RATE / 200];
+    for (int i = 0; i < burst.length; i++) {
+      burst[i] = (float) (0.5 * random.nextGaussian() * Math.exp(-i * 5d / burst.length));
+    }
+    FloatBuffer click = FloatBuffer.wrap(burst);
+    int interval = SAMPLE_RATE / 4;
+    int clickCount = 20;
+    int size = LATENCY_MAX + interval * clickCount;
+
+    int errors = 0;
+    for (int lag : new int[]{-LATENCY_MAX + 1, -517, 0, 1, 241, 1723, LATENCY_MAX - 1}) {
+      LatencyDetector detector = new LatencyDetector(SAMPLE_RATE, LATENCY_MAX);
+      float[] recording = getNoise(random, size, 0.05f);
+      for (int c = 0; c < clickCount; c++) {
+        long frame = LATENCY_MAX + (long) c * interval;
+        detector.addClick(frame, click);
+        for (int i = 0; i < burst.length; i++) {
+          // the microphone picks the click up much quieter than it has been played
+          recording[(int) frame + lag + i] += 0.2f * burst[i];
+        }
+      }
+      detector.addRecording(recording, 0, recording.length);
+      LatencyDetector.Result result = detector.detect();
+      if (result == null || result.lag != lag || result.correlation < CORRELATION_MIN) {
+        errors++;
+        System.out.println("FAILED latency detection of lag " + lag + ": " + (result != null
+            ? "lag " + result.lag + ", correlation " + result.correlation
+            : "no result"));
+      }
+    }
+
+    LatencyDetector detector = new LatencyDetector(SAMPLE_RATE, LATENCY_MAX);
+    for (int c = 0; c < clickCount; c++) {
+      detector.addClick(LATENCY_MAX + (long) c * interval, click);
+    }
+    float[] noise = getNoise(random, size, 0.05f);
+    detector.addRecording(noise, 0, noise.length);
+    LatencyDetector.Result result = detector.detect();
+    if (result == null || result.correlation >= CORRELATION_MIN) {
+      errors++;
+      System.out.println("FAILED latency detection of noise: " + (result != null
+          ? "lag " + result.lag + ", correlation " + result.correlation
+          : "no result"));
+    }
+    return errors;
+  }
+
+  private static float[] getNoise(Random random, int size, float level) {
+    float[] noise = new float[size];
+    for (int i = 0; i < size; i++) {
+      noise[i] = (float) (level * random.nextGaussian());
+    }
+    return noise;
+  }
+
+  /**
+   * Plays burst by burst until the tick with the given index and its sound have been rendered.
+   */
+  private static RecordingSink play(AudioEngine engine, List<Tick> ticks, int tickIndex) {
+    VirtualClock clock = new VirtualClock(SAMPLE_RATE);
+    RecordingSink sink = new RecordingSink(clock, SAMPLE_RATE, FILL_TARGET);
+    engine.fill(sink);
+    while (ticks.size() <= tickIndex
+        || sink.getFramesWritten() <= ticks.get(tickIndex).frame + engine.getLatency()) {
+      clock.advance(BURST_SIZE);
+      engine.fill(sink);
+    }
+    return sink;
+  }
+
+  private static void checkPlacement(
+      Result result, AudioEngine engine, RecordingSink sink, List<Tick> ticks
+  ) {
+    int onset = 0;
+    for (Tick tick : ticks) {
+      long expected = tick.frame + engine.getLatency();
+      if (tick.typeId == TickType.ID_MUTED || expected >= sink.getFramesWritten()) {
+        continue;
+      }
+      if (onset >= sink.getOnsetCount() || sink.getOnset(onset) != expected) {
+        result.placementErrors++;
+      }
+      onset++;
+    }
+    result.placementErrors += Math.max(0, sink.getOnsetCount() - onset);
+  }
+
+  private static double frameToMillis(long frames) {
+    return frames * 1000d / SAMPLE_RATE;
+  }
+
+  private static class Result {
+
+    static final String HEADER = "tempo,max_schedule_error_frames,drift_ms,legacy_drift_ms,"
+        + "placement_errors,count_in_error_ms,timer_error_ms,incremental_errors,passed";
+
+    final float tempo;
+    double maxScheduleError, drift, legacyDrift, countInError, timerError;
+    int placementErrors, incrementalErrors;
+
+    Result(float tempo) {
+      this.tempo = tempo;
+    }
+
+    boolean passed() {
+      return maxScheduleError <= 1
+          && placementErrors == 0
+          && Math.abs(countInError) <= 1
+          && Math.abs(timerError) <= 1
+          && incrementalErrors == 0;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.ENGLISH, "%.0f,%.6f,%.3f,%.1f,%d,%.3f,%.3f,%d,%b",
+          tempo, maxScheduleError, drift, legacyDrift, placementErrors, countInError,
+          timerError, incrementalErrors, passed()
+      );
+    }
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.simulation;
+
+/**
+ * Clock of the simulated audio output, which only moves when it is advanced.
+ */
+class VirtualClock {
+
+  private final int sampleRate;
+  private long frames;
+
+  VirtualClock(int sampleRate) {
+    this.sampleRate = sampleRate;
+  }
+
+  void advance(int frames) {
+    this.frames += frames;
+  }
+
+  /**
+   * Returns the number of frames played so far.
+   */
+  long getFrames() {
+    return frames;
+  }
+
+  double toMillis(long frames) {
+    return frames * 1000d / sampleRate;
+  }
+}
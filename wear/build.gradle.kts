@@ -65,6 +65,7 @@ android {
 }
 
 dependencies {
+  implementation(project(":core"))
   implementation(platform(libs.compose.bom))
   implementation(libs.preference)
   implementation(libs.lifecycle.service)
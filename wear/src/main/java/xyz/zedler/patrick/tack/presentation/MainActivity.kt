@@ -26,7 +26,9 @@ import android.content.ServiceConnection
 import android.net.Uri
 import android.os.Build
 import android.os.Bundle
+import android.os.Handler
 import android.os.IBinder
+import android.os.Looper
 import android.util.Log
 import android.view.KeyEvent
 import androidx.activity.ComponentActivity
@@ -34,6 +36,7 @@ import androidx.activity.compose.setContent
 import androidx.activity.result.ActivityResultLauncher
 import androidx.activity.result.contract.ActivityResultContracts
 import androidx.core.splashscreen.SplashScreen.Companion.installSplashScreen
+import xyz.zedler.patrick.tack.core.Tick
 import xyz.zedler.patrick.tack.service.MetronomeService
 import xyz.zedler.patrick.tack.util.ButtonUtil
 import xyz.zedler.patrick.tack.util.ButtonUtil.OnPressListener
@@ -46,6 +49,8 @@ class MainActivity : ComponentActivity(), ServiceConnection {
 
   companion object {
     private const val TAG = "MainActivity"
+    private const val MSG_PRE_TICK = 0
+    private const val MSG_TICK = 1
   }
 
   private lateinit var metronomeService: MetronomeService
@@ -56,6 +61,20 @@ class MainActivity : ComponentActivity(), ServiceConnection {
   private lateinit var buttonUtilSlower: ButtonUtil
   private lateinit var requestPermissionLauncher: ActivityResultLauncher<String>
   private var bound: Boolean = false
+  // ticks are passed by their sequence number, so the callbacks do not allocate per tick
+  private val uiTick = Tick()
+  private val tickHandler = Handler(Looper.getMainLooper()) { msg ->
+    val tick = getMetronomeUtil().getTick(msg.arg1, uiTick)
+    if (tick != null) {
+      if (msg.what == MSG_PRE_TICK) {
+        viewModel.onPreTick(tick)
+      } else {
+        viewModel.onTick(tick)
+      }
+    }
+    true
+  }
+  private val flashScreenEnd = Runnable { viewModel.onFlashScreenEnd() }
 
   override fun onCreate(savedInstanceState: Bundle?) {
     installSplashScreen()
@@ -67,20 +86,14 @@ class MainActivity : ComponentActivity(), ServiceConnection {
     tempoTapUtil = TempoTapUtil()
     metronomeUtil = MetronomeUtil(this, false)
     metronomeUtil.addListener(object : MetronomeUtil.MetronomeListenerAdapter() {
-      override fun onMetronomePreTick(tick: MetronomeUtil.Tick) {
-        runOnUiThread {
-          viewModel.onPreTick(tick)
-        }
+      override fun onMetronomePreTick(tick: Tick) {
+        tickHandler.obtainMessage(MSG_PRE_TICK, tick.sequence, 0).sendToTarget()
       }
-      override fun onMetronomeTick(tick: MetronomeUtil.Tick) {
-        runOnUiThread {
-          viewModel.onTick(tick)
-        }
+      override fun onMetronomeTick(tick: Tick) {
+        tickHandler.obtainMessage(MSG_TICK, tick.sequence, 0).sendToTarget()
       }
       override fun onFlashScreenEnd() {
-        runOnUiThread {
-          viewModel.onFlashScreenEnd()
-        }
+        runOnUiThread(flashScreenEnd)
       }
       override fun onPermissionMissing() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
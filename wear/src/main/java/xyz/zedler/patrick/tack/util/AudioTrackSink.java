@@ -0,0 +1,103 @@
+/*
+ * This file is part of Tack Android.
+ *
+ * Tack Android is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tack Android is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tack Android. If not, see http://www.gnu.org/licenses/.
+ *
+ * Copyright (c) 2020-2024 by Patrick Zedler
+ */
+
+package xyz.zedler.patrick.tack.util;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import androidx.annotation.NonNull;
+import xyz.zedler.patrick.tack.core.AudioSink;
+
+/**
+ * Streaming float track as output of the audio engine, written without ever blocking.
+ */
+public class AudioTrackSink implements AudioSink {
+
+  private final AudioTrack track;
+  private final int sampleRate;
+  private long framesWritten;
+
+  public AudioTrackSink(@NonNull AudioAttributes attributes, int sampleRate) {
+    this.sampleRate = sampleRate;
+    AudioFormat audioFormat = new AudioFormat.Builder()
+        .setEncoding(AudioFormat.ENCODING_PCM_FLOAT)
+        .setSampleRate(sampleRate)
+        .setChannelMask(AudioFormat.CHANNEL_OUT_MONO)
+        .build();
+    track = new AudioTrack(
+        attributes,
+        audioFormat,
+        AudioTrack.getMinBufferSize(
+            sampleRate, AudioFormat.CHANNEL_OUT_MONO, AudioFormat.ENCODING_PCM_FLOAT
+        ),
+        AudioTrack.MODE_STREAM,
+        AudioManager.AUDIO_SESSION_ID_GENERATE
+    );
+  }
+
+  @Override
+  public int getSampleRate() {
+    return sampleRate;
+  }
+
+  @Override
+  public int getFillLevel() {
+    // int arithmetic because the playback head position wraps around as unsigned int
+    return (int) framesWritten - track.getPlaybackHeadPosition();
+  }
+
+  @Override
+  public int getFillTarget() {
+    return track.getBufferSizeInFrames();
+  }
+
+  @Override
+  public int write(float[] data, int offset, int length) {
+    int result = track.write(data, offset, length, AudioTrack.WRITE_NON_BLOCKING);
+    if (result < 0) {
+      throw new IllegalStateException("Failed to play audio data. Error code: " + result);
+    }
+    framesWritten += result;
+    return result;
+  }
+
+  @NonNull
+  public AudioTrack getTrack() {
+    return track;
+  }
+
+  /**
+   * Starts playback if it is not running yet, should be called after the buffer has been filled.
+   */
+  public void play() {
+    if (track.getPlayState() != AudioTrack.PLAYSTATE_PLAYING) {
+      track.play();
+    }
+  }
+
+  public void release() {
+    if (track.getState() == AudioTrack.STATE_INITIALIZED) {
+      track.stop();
+    }
+    track.flush();
+    track.release();
+  }
+}
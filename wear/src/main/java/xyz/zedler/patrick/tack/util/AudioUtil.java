@@ -22,65 +22,93 @@ package xyz.zedler.patrick.tack.util;
 import android.content.Context;
 import android.media.AudioAttributes;
 import android.media.AudioFocusRequest;
-import android.media.AudioFormat;
 import android.media.AudioManager;
 import android.media.AudioManager.OnAudioFocusChangeListener;
 import android.media.AudioTrack;
-import android.media.audiofx.LoudnessEnhancer;
-import android.os.Build.VERSION;
-import android.os.Build.VERSION_CODES;
+import android.media.AudioTrack.OnPlaybackPositionUpdateListener;
+import android.os.Handler;
 import android.util.Log;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RawRes;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
-import java.nio.charset.StandardCharsets;
+import java.nio.channels.Channels;
 import xyz.zedler.patrick.tack.Constants.Sound;
-import xyz.zedler.patrick.tack.Constants.TickType;
 import xyz.zedler.patrick.tack.R;
-import xyz.zedler.patrick.tack.util.MetronomeUtil.Tick;
+import xyz.zedler.patrick.tack.core.AudioEngine;
+import xyz.zedler.patrick.tack.core.GainStage;
+import xyz.zedler.patrick.tack.core.Pattern;
+import xyz.zedler.patrick.tack.core.Resampler;
+import xyz.zedler.patrick.tack.core.Tick;
+import xyz.zedler.patrick.tack.core.WavDecoder;
+import xyz.zedler.patrick.tack.core.WavDecoder.Wav;
 
 public class AudioUtil implements OnAudioFocusChangeListener {
 
   private static final String TAG = AudioUtil.class.getSimpleName();
   private static final boolean DEBUG = false;
 
-  public static final int SAMPLE_RATE_IN_HZ = 48000;
-  private static final int SILENCE_CHUNK_SIZE = 8000;
-  private static final int DATA_CHUNK_SIZE = 8;
-  private static final byte[] DATA_MARKER = "data".getBytes(StandardCharsets.US_ASCII);
+  // used if the device does not report its output rate
+  private static final int SAMPLE_RATE_DEFAULT = 48000;
+  private static final float DUCK_LEVEL = 0.25f;
+  // accents of sounds without dedicated samples are pitched by an octave
+  private static final int PITCH_NORMAL = 0;
+  private static final int PITCH_HIGH = 12;
+  private static final int PITCH_LOW = -12;
 
   private final Context context;
   private final AudioManager audioManager;
   private final AudioListener listener;
-  private AudioTrack track;
-  private LoudnessEnhancer loudnessEnhancer;
-  private float[] tickNormal, tickStrong, tickSub;
+  private final Object trackLock = new Object();
+  private final Runnable fillRunnable = this::fill;
+  private final int sampleRate;
+  private final AudioEngine engine;
+  private AudioTrackSink sink;
+  private Handler handler;
   private int gain;
-  private boolean playing, muted, ignoreFocus;
-  private final float[] silence = new float[SILENCE_CHUNK_SIZE];
+  private volatile boolean playing, ducked;
+  private boolean ignoreFocus;
 
   public AudioUtil(@NonNull Context context, @NonNull AudioListener listener) {
     this.context = context;
     this.listener = listener;
     audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+    sampleRate = getOutputSampleRate();
+    engine = new AudioEngine(sampleRate, tick -> {
+      if (DEBUG) {
+        Log.v(TAG, "onTick: started tick sound for " + tick);
+      }
+      listener.onAudioTick(tick);
+    });
   }
 
-  public void play() {
-    playing = true;
-    track = getTrack();
-    try {
-      loudnessEnhancer = new LoudnessEnhancer(track.getAudioSessionId());
-      loudnessEnhancer.setTargetGain(gain * 100);
-      loudnessEnhancer.setEnabled(gain > 0);
-    } catch (RuntimeException e) {
-      Log.e(TAG, "Failed to initialize LoudnessEnhancer", e);
+  /**
+   * Starts playback, the audio is rendered and written on the thread of the given handler.
+   */
+  public void play(@NonNull Handler handler) {
+    synchronized (trackLock) {
+      this.handler = handler;
+      playing = true;
+      engine.reset();
+      sink = new AudioTrackSink(getAttributes(), sampleRate);
+      AudioTrack track = sink.getTrack();
+      track.setPositionNotificationPeriod(sink.getFillTarget() / 2);
+      track.setPlaybackPositionUpdateListener(new OnPlaybackPositionUpdateListener() {
+        @Override
+        public void onMarkerReached(AudioTrack track) {
+        }
+
+        @Override
+        public void onPeriodicNotification(AudioTrack track) {
+          fill();
+        }
+      }, handler);
+      ducked = false;
+      updateGain();
     }
-    track.play();
+    handler.post(fillRunnable);
 
     if (ignoreFocus) {
       return;
@@ -90,12 +118,15 @@ public class AudioUtil implements OnAudioFocusChangeListener {
 
   public void stop() {
     playing = false;
-    if (track != null) {
-      if (track.getState() == AudioTrack.STATE_INITIALIZED) {
-        track.stop();
+    if (handler != null) {
+      handler.removeCallbacks(fillRunnable);
+    }
+    synchronized (trackLock) {
+      if (sink != null) {
+        sink.getTrack().setPlaybackPositionUpdateListener(null);
+        sink.release();
+        sink = null;
       }
-      track.flush();
-      track.release();
     }
     if (!ignoreFocus) {
       audioManager.abandonAudioFocusRequest(getAudioFocusRequest(this));
@@ -105,70 +136,90 @@ public class AudioUtil implements OnAudioFocusChangeListener {
   @Override
   public void onAudioFocusChange(int focusChange) {
     if (focusChange == AudioManager.AUDIOFOCUS_GAIN) {
-      if (track != null) {
-        track.setVolume(1);
-      }
+      ducked = false;
+      updateGain();
     } else if (focusChange == AudioManager.AUDIOFOCUS_LOSS) {
       stop();
       listener.onAudioStop();
     } else if (focusChange == AudioManager.AUDIOFOCUS_LOSS_TRANSIENT
         || focusChange == AudioManager.AUDIOFOCUS_LOSS_TRANSIENT_CAN_DUCK) {
-      if (track != null) {
-        track.setVolume(0.25f);
+      ducked = true;
+      updateGain();
+    }
+  }
+
+  /**
+   * Tops up the track buffer without ever blocking. Called on every position notification of the
+   * track, with a delayed fallback in case a notification gets lost.
+   */
+  private void fill() {
+    int fillTarget;
+    synchronized (trackLock) {
+      if (!playing || sink == null) {
+        return;
       }
+      engine.fill(sink);
+      sink.play();
+      fillTarget = sink.getFillTarget();
     }
+    handler.removeCallbacks(fillRunnable);
+    handler.postDelayed(fillRunnable, Math.max(1, fillTarget * 1000L / sampleRate / 2));
   }
 
-  public void tick(Tick tick, int tempo, int subdivisionCount) {
-    writeTickPeriod(tick, tempo, subdivisionCount);
+  public void setPattern(float tempo, String[] beats, String[] subdivisions) {
+    engine.setPattern(new Pattern(tempo, beats, subdivisions));
   }
 
+  /**
+   * Decodes the sounds at the output sample rate, pitched accents of sounds without dedicated
+   * samples included.
+   */
   public void setSound(String sound) {
     int resIdNormal, resIdStrong, resIdSub;
-    Pitch pitchNormal = Pitch.NORMAL;
-    Pitch pitchStrong = Pitch.HIGH;
-    Pitch pitchSub = Pitch.LOW;
+    int pitchNormal = PITCH_NORMAL;
+    int pitchStrong = PITCH_HIGH;
+    int pitchSub = PITCH_LOW;
     switch (sound) {
       case Sound.WOOD:
         resIdNormal = R.raw.wood;
         resIdStrong = R.raw.wood;
         resIdSub = R.raw.mechanical_knock;
-        pitchSub = Pitch.NORMAL;
+        pitchSub = PITCH_NORMAL;
         break;
       case Sound.MECHANICAL:
         resIdNormal = R.raw.mechanical_tick;
         resIdStrong = R.raw.mechanical_ding;
         resIdSub = R.raw.mechanical_knock;
-        pitchStrong = Pitch.NORMAL;
-        pitchSub = Pitch.NORMAL;
+        pitchStrong = PITCH_NORMAL;
+        pitchSub = PITCH_NORMAL;
         break;
       case Sound.BEATBOXING_1:
         resIdNormal = R.raw.beatbox_snare1;
         resIdStrong = R.raw.beatbox_kick1;
         resIdSub = R.raw.beatbox_hihat1;
-        pitchStrong = Pitch.NORMAL;
-        pitchSub = Pitch.NORMAL;
+        pitchStrong = PITCH_NORMAL;
+        pitchSub = PITCH_NORMAL;
         break;
       case Sound.BEATBOXING_2:
         resIdNormal = R.raw.beatbox_snare2;
         resIdStrong = R.raw.beatbox_kick2;
         resIdSub = R.raw.beatbox_hihat2;
-        pitchStrong = Pitch.NORMAL;
-        pitchSub = Pitch.NORMAL;
+        pitchStrong = PITCH_NORMAL;
+        pitchSub = PITCH_NORMAL;
         break;
       case Sound.HANDS:
         resIdNormal = R.raw.hands_hit;
         resIdStrong = R.raw.hands_clap;
         resIdSub = R.raw.hands_snap;
-        pitchStrong = Pitch.NORMAL;
-        pitchSub = Pitch.NORMAL;
+        pitchStrong = PITCH_NORMAL;
+        pitchSub = PITCH_NORMAL;
         break;
       case Sound.FOLDING:
         resIdNormal = R.raw.folding_knock;
         resIdStrong = R.raw.folding_fold;
         resIdSub = R.raw.folding_tap;
-        pitchStrong = Pitch.NORMAL;
-        pitchSub = Pitch.NORMAL;
+        pitchStrong = PITCH_NORMAL;
+        pitchSub = PITCH_NORMAL;
         break;
       default:
         resIdNormal = R.raw.sine;
@@ -176,21 +227,24 @@ public class AudioUtil implements OnAudioFocusChangeListener {
         resIdSub = R.raw.sine;
         break;
     }
-    tickNormal = loadAudio(resIdNormal, pitchNormal);
-    tickStrong = loadAudio(resIdStrong, pitchStrong);
-    tickSub = loadAudio(resIdSub, pitchSub);
+    engine.setSounds(
+        sound,
+        loadAudio(resIdNormal, pitchNormal),
+        loadAudio(resIdStrong, pitchStrong),
+        loadAudio(resIdSub, pitchSub)
+    );
   }
 
+  /**
+   * Sets the output gain in dB, peaks above full scale are caught by the limiter.
+   */
   public void setGain(int gain) {
     this.gain = gain;
-    if (loudnessEnhancer != null) {
-      try {
-        loudnessEnhancer.setTargetGain(gain * 100);
-        loudnessEnhancer.setEnabled(gain > 0);
-      } catch (RuntimeException e) {
-        Log.e(TAG, "Failed to set target gain: ", e);
-      }
-    }
+    updateGain();
+  }
+
+  private void updateGain() {
+    engine.setGain(GainStage.dbToLinear(gain) * (ducked ? DUCK_LEVEL : 1));
   }
 
   public int getGain() {
@@ -198,7 +252,7 @@ public class AudioUtil implements OnAudioFocusChangeListener {
   }
 
   public void setMuted(boolean muted) {
-    this.muted = muted;
+    engine.setMuted(muted);
   }
 
   public void setIgnoreFocus(boolean ignore) {
@@ -209,64 +263,14 @@ public class AudioUtil implements OnAudioFocusChangeListener {
     return ignoreFocus;
   }
 
-  private void writeTickPeriod(Tick tick, int tempo, int subdivisionCount) {
-    float[] tickSound = muted ? silence : getTickSound(tick.type);
-    int periodSize = 60 * SAMPLE_RATE_IN_HZ / tempo / subdivisionCount;
-    int sizeWritten = writeNextAudioData(tickSound, periodSize, 0);
-    if (DEBUG) {
-      Log.v(TAG, "writeTickPeriod: wrote tick sound for " + tick);
-    }
-    writeSilenceUntilPeriodFinished(sizeWritten, periodSize);
-  }
-
-  private void writeSilenceUntilPeriodFinished(int previousSizeWritten, int periodSize) {
-    int sizeWritten = previousSizeWritten;
-    while (sizeWritten < periodSize) {
-      sizeWritten += writeNextAudioData(silence, periodSize, sizeWritten);
-      if (DEBUG) {
-        Log.v(TAG, "writeSilenceUntilPeriodFinished: wrote silence");
-      }
-    }
-  }
-
-  private int writeNextAudioData(float[] data, int periodSize, int sizeWritten) {
-    int size = Math.min(data.length, periodSize - sizeWritten);
-    if (playing) {
-      writeAudio(track, data, size);
-    }
-    return size;
-  }
-
-  private float[] getTickSound(String tickType) {
-    switch (tickType) {
-      case TickType.STRONG:
-        return tickStrong;
-      case TickType.SUB:
-        return tickSub;
-      case TickType.MUTED:
-        return silence;
-      default:
-        return tickNormal;
+  private int getOutputSampleRate() {
+    try {
+      return Integer.parseInt(audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE));
+    } catch (NumberFormatException e) {
+      return SAMPLE_RATE_DEFAULT;
     }
   }
 
-  private static AudioTrack getTrack() {
-    AudioFormat audioFormat = new AudioFormat.Builder()
-        .setEncoding(AudioFormat.ENCODING_PCM_FLOAT)
-        .setSampleRate(SAMPLE_RATE_IN_HZ)
-        .setChannelMask(AudioFormat.CHANNEL_OUT_MONO)
-        .build();
-    return new AudioTrack(
-        getAttributes(),
-        audioFormat,
-        AudioTrack.getMinBufferSize(
-            audioFormat.getSampleRate(), audioFormat.getChannelMask(), audioFormat.getEncoding()
-        ),
-        AudioTrack.MODE_STREAM,
-        AudioManager.AUDIO_SESSION_ID_GENERATE
-    );
-  }
-
   private static AudioAttributes getAttributes() {
     return new AudioAttributes.Builder()
         .setUsage(AudioAttributes.USAGE_MEDIA)
@@ -282,100 +286,26 @@ public class AudioUtil implements OnAudioFocusChangeListener {
         .build();
   }
 
-  private float[] loadAudio(@RawRes int resId, Pitch pitch) {
+  private FloatBuffer loadAudio(@RawRes int resId, int pitch) {
     try (InputStream stream = context.getResources().openRawResource(resId)) {
-      return adjustPitch(readDataFromWavFloat(stream), pitch);
+      Wav wav = WavDecoder.decode(Channels.newChannel(stream));
+      return FloatBuffer.wrap(Resampler.resample(wav.data, wav.sampleRate, sampleRate, pitch));
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
 
-  private float[] adjustPitch(float[] originalData, Pitch pitch) {
-    if (pitch == Pitch.HIGH) {
-      float[] newData = new float[originalData.length / 2];
-      for (int i = 0; i < newData.length; i++) {
-        newData[i] = originalData[i * 2];
-      }
-      return newData;
-    } else if (pitch == Pitch.LOW) {
-      float[] newData = new float[originalData.length * 2];
-      for (int i = 0, j = 0; i < originalData.length; i++, j += 2) {
-        newData[j] = originalData[i];
-        newData[j + 1] = originalData[i];
-      }
-      return newData;
-    } else {
-      return originalData;
-    }
-  }
-
-  private static void writeAudio(AudioTrack track, float[] data, int size) {
-    try {
-      int result = track.write(data, 0, size, AudioTrack.WRITE_BLOCKING);
-      if (result < 0) {
-        throw new IllegalStateException("Error code: " + result);
-      }
-    } catch (Exception e) {
-      Log.e(TAG, "writeAudio: failed to play audion data", e);
-    }
-  }
-
-  private static float[] readDataFromWavFloat(InputStream input) throws IOException {
-    byte[] content;
-    if (VERSION.SDK_INT >= VERSION_CODES.TIRAMISU) {
-      content = input.readAllBytes();
-    } else {
-      content = readInputStreamToBytes(input);
-    }
-    int indexOfDataMarker = getIndexOfDataMarker(content);
-    if (indexOfDataMarker < 0) {
-      throw new RuntimeException("Could not find data marker in the content");
-    }
-    int startOfSound = indexOfDataMarker + DATA_CHUNK_SIZE;
-    if (startOfSound > content.length) {
-      throw new RuntimeException("Too short data chunk");
-    }
-    ByteBuffer byteBuffer = ByteBuffer.wrap(
-        content, startOfSound, content.length - startOfSound
-    );
-    byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-    FloatBuffer floatBuffer = byteBuffer.asFloatBuffer();
-    float[] data = new float[floatBuffer.remaining()];
-    floatBuffer.get(data);
-    return data;
-  }
-
-  private static byte[] readInputStreamToBytes(InputStream input) throws IOException {
-    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-    int read;
-    byte[] data = new byte[4096];
-    while ((read = input.read(data, 0, data.length)) != -1) {
-      buffer.write(data, 0, read);
-    }
-    return buffer.toByteArray();
-  }
-
-  private static int getIndexOfDataMarker(byte[] array) {
-    if (DATA_MARKER.length == 0) {
-      return 0;
-    }
-    outer:
-    for (int i = 0; i < array.length - DATA_MARKER.length + 1; i++) {
-      for (int j = 0; j < DATA_MARKER.length; j++) {
-        if (array[i + j] != DATA_MARKER[j]) {
-          continue outer;
-        }
-      }
-      return i;
-    }
-    return -1;
-  }
-
-  private enum Pitch {
-    NORMAL, HIGH, LOW
+  /**
+   * Copies the rendered tick with the given sequence number into the given tick and returns it,
+   * or null if its slot in the tick ring has been reused already.
+   */
+  @Nullable
+  public Tick getTick(int sequence, @NonNull Tick target) {
+    return engine.getTickRing().get(sequence, target);
   }
 
   public interface AudioListener {
     void onAudioStop();
+    void onAudioTick(@NonNull Tick tick);
   }
-}
\ No newline at end of file
+}
@@ -19,13 +19,19 @@
 
 package xyz.zedler.patrick.tack.util;
 
+import static xyz.zedler.patrick.tack.core.TickType.ID_MUTED;
+import static xyz.zedler.patrick.tack.core.TickType.ID_STRONG;
+import static xyz.zedler.patrick.tack.core.TickType.ID_SUB;
+
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.Message;
 import android.util.Log;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.preference.PreferenceManager;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -37,23 +43,37 @@ import xyz.zedler.patrick.tack.Constants;
 import xyz.zedler.patrick.tack.Constants.Def;
 import xyz.zedler.patrick.tack.Constants.Pref;
 import xyz.zedler.patrick.tack.Constants.TickType;
+import xyz.zedler.patrick.tack.core.Tick;
+import xyz.zedler.patrick.tack.util.AudioUtil.AudioListener;
 
 public class MetronomeUtil {
 
   private static final String TAG = MetronomeUtil.class.getSimpleName();
 
+  private static final int MSG_PRE_TICK = 0;
+  private static final int MSG_TICK = 1;
+
   private final SharedPreferences sharedPrefs;
   private final AudioUtil audioUtil;
   private final HapticUtil hapticUtil;
   private final BookmarkUtil bookmarkUtil;
   private final NotificationUtil notificationUtil;
   private final Set<MetronomeListener> listeners = new HashSet<>();
+  // snapshot of the listeners for the tick callbacks, iterating the set would allocate per tick
+  private volatile MetronomeListener[] tickListeners = new MetronomeListener[0];
+  // ticks are copied out of the ring into this one on the callback thread, see TickRing
+  private final Tick callbackTick = new Tick();
+  private final Runnable flashScreenEnd = () -> {
+    for (MetronomeListener listener : tickListeners) {
+      listener.onFlashScreenEnd();
+    }
+  };
   public final boolean fromService;
   private HandlerThread audioThread, callbackThread;
   private Handler tickHandler, latencyHandler, flashHandler;
   private List<String> beats, subdivisions;
   private int tempo;
-  private long tickIndex, latency;
+  private long latency;
   private boolean playing, useSubdivisions, beatModeVibrate;
   private boolean alwaysVibrate, flashScreen, keepAwake, reduceAnim;
   private boolean neverStartedWithGain = true;
@@ -63,7 +83,17 @@ public class MetronomeUtil {
 
     sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
 
-    audioUtil = new AudioUtil(context, this::stop);
+    audioUtil = new AudioUtil(context, new AudioListener() {
+      @Override
+      public void onAudioStop() {
+        stop();
+      }
+
+      @Override
+      public void onAudioTick(@NonNull Tick tick) {
+        performTick(tick);
+      }
+    });
     hapticUtil = new HapticUtil(context);
     bookmarkUtil = new BookmarkUtil(context);
     notificationUtil = new NotificationUtil(context);
@@ -84,6 +114,7 @@ public class MetronomeUtil {
     flashScreen = sharedPrefs.getBoolean(Pref.FLASH_SCREEN, Def.FLASH_SCREEN);
     keepAwake = sharedPrefs.getBoolean(Pref.KEEP_AWAKE, Def.KEEP_AWAKE);
     reduceAnim = sharedPrefs.getBoolean(Pref.REDUCE_ANIM, Def.REDUCE_ANIM);
+    updateAudioPattern();
 
     setSound(sharedPrefs.getString(Pref.SOUND, Def.SOUND));
     setIgnoreFocus(sharedPrefs.getBoolean(Pref.IGNORE_FOCUS, Def.IGNORE_FOCUS));
@@ -110,7 +141,7 @@ public class MetronomeUtil {
       callbackThread = new HandlerThread("metronome_callback");
       callbackThread.start();
       removeHandlerCallbacks();
-      latencyHandler = new Handler(callbackThread.getLooper());
+      latencyHandler = new Handler(callbackThread.getLooper(), this::handleTickMessage);
     }
     flashHandler = new Handler(Looper.getMainLooper());
   }
@@ -126,6 +157,7 @@ public class MetronomeUtil {
 
   public void destroy() {
     listeners.clear();
+    updateTickListeners();
     if (fromService) {
       removeHandlerCallbacks();
       audioThread.quitSafely();
@@ -135,14 +167,21 @@ public class MetronomeUtil {
 
   public void addListener(MetronomeListener listener) {
     listeners.add(listener);
+    updateTickListeners();
   }
 
   public void addListeners(Set<MetronomeListener> listeners) {
     this.listeners.addAll(listeners);
+    updateTickListeners();
   }
 
   public void removeListener(MetronomeListener listener) {
     listeners.remove(listener);
+    updateTickListeners();
+  }
+
+  private void updateTickListeners() {
+    tickListeners = listeners.toArray(new MetronomeListener[0]);
   }
 
   public Set<MetronomeListener> getListeners() {
@@ -161,22 +200,7 @@ public class MetronomeUtil {
     }
 
     playing = true;
-    audioUtil.play();
-    tickIndex = 0;
-    tickHandler.post(new Runnable() {
-      @Override
-      public void run() {
-        if (isPlaying()) {
-          tickHandler.postDelayed(this, getInterval() / getSubdivisionsCount());
-          Tick tick = new Tick(
-              tickIndex, getCurrentBeat(), getCurrentSubdivision(), getCurrentTickType()
-          );
-          performTick(tick);
-          audioUtil.tick(tick, tempo, getSubdivisionsCount());
-          tickIndex++;
-        }
-      }
-    });
+    audioUtil.play(tickHandler);
 
     if (getGain() > 0) {
       neverStartedWithGain = false;
@@ -229,6 +253,7 @@ public class MetronomeUtil {
   public void setBeats(List<String> beats) {
     this.beats = beats;
     sharedPrefs.edit().putString(Pref.BEATS, String.join(",", beats)).apply();
+    updateAudioPattern();
   }
 
   public List<String> getBeats() {
@@ -270,6 +295,7 @@ public class MetronomeUtil {
     sharedPrefs.edit()
         .putString(Pref.SUBDIVISIONS, String.join(",", getSubdivisions()))
         .apply();
+    updateAudioPattern();
   }
 
   public List<String> getSubdivisions() {
@@ -332,6 +358,7 @@ public class MetronomeUtil {
     if (this.tempo != tempo) {
       this.tempo = tempo;
       sharedPrefs.edit().putInt(Pref.TEMPO, tempo).apply();
+      updateAudioPattern();
     }
   }
 
@@ -345,6 +372,12 @@ public class MetronomeUtil {
     return tempoNew;
   }
 
+  private void updateAudioPattern() {
+    audioUtil.setPattern(
+        tempo, beats.toArray(new String[0]), getSubdivisions().toArray(new String[0])
+    );
+  }
+
   public long getInterval() {
     return 1000 * 60 / tempo;
   }
@@ -454,54 +487,62 @@ public class MetronomeUtil {
   }
 
   private void performTick(Tick tick) {
-    latencyHandler.postDelayed(() -> {
+    // the callbacks look the tick up by its sequence number, the slot is reused by the engine
+    latencyHandler.sendMessageDelayed(
+        latencyHandler.obtainMessage(MSG_PRE_TICK, tick.sequence, 0),
+        Math.max(0, latency - Constants.BEAT_ANIM_OFFSET)
+    );
+    latencyHandler.sendMessageDelayed(
+        latencyHandler.obtainMessage(MSG_TICK, tick.sequence, 0), latency
+    );
+    if (flashScreen) {
+      flashHandler.postDelayed(flashScreenEnd, latency + Constants.FLASH_SCREEN_DURATION);
+    }
+  }
+
+  /**
+   * Dispatches the delayed tick callbacks on the callback thread without allocating.
+   */
+  private boolean handleTickMessage(@NonNull Message msg) {
+    Tick tick = audioUtil.getTick(msg.arg1, callbackTick);
+    if (tick == null) {
+      return true; // slot has already been reused, the callback is far too late anyway
+    }
+    MetronomeListener[] listeners = tickListeners;
+    if (msg.what == MSG_PRE_TICK) {
       for (MetronomeListener listener : listeners) {
         listener.onMetronomePreTick(tick);
       }
-    }, Math.max(0, latency - Constants.BEAT_ANIM_OFFSET));
-    latencyHandler.postDelayed(() -> {
-      if (beatModeVibrate || alwaysVibrate) {
-        switch (tick.type) {
-          case TickType.STRONG:
-            hapticUtil.heavyClick();
-            break;
-          case TickType.SUB:
-            hapticUtil.tick();
-            break;
-          case TickType.MUTED:
-            break;
-          default:
-            hapticUtil.click();
-        }
-      }
-      for (MetronomeListener listener : listeners) {
-        listener.onMetronomeTick(tick);
+      return true;
+    }
+    if (beatModeVibrate || alwaysVibrate) {
+      switch (tick.typeId) {
+        case ID_STRONG:
+          hapticUtil.heavyClick();
+          break;
+        case ID_SUB:
+          hapticUtil.tick();
+          break;
+        case ID_MUTED:
+          break;
+        default:
+          hapticUtil.click();
       }
-    }, latency);
-    if (flashScreen) {
-      flashHandler.postDelayed(() -> {
-        for (MetronomeListener listener : listeners) {
-          listener.onFlashScreenEnd();
-        }
-      }, latency + Constants.FLASH_SCREEN_DURATION);
     }
+    for (MetronomeListener listener : listeners) {
+      listener.onMetronomeTick(tick);
+    }
+    return true;
   }
 
-  private int getCurrentBeat() {
-    return (int) ((tickIndex / getSubdivisionsCount()) % beats.size()) + 1;
-  }
-
-  private int getCurrentSubdivision() {
-    return (int) (tickIndex % getSubdivisionsCount()) + 1;
-  }
-
-  private String getCurrentTickType() {
-    int subdivisionsCount = getSubdivisionsCount();
-    if ((tickIndex % subdivisionsCount) == 0) {
-      return beats.get((int) ((tickIndex / subdivisionsCount) % beats.size()));
-    } else {
-      return subdivisions.get((int) (tickIndex % subdivisionsCount));
-    }
+  /**
+   * Copies the tick passed to the listeners with the given sequence number into the given tick
+   * and returns it, or null if its slot has been reused already. Lets listeners hand ticks to
+   * other threads by their sequence number.
+   */
+  @Nullable
+  public Tick getTick(int sequence, @NonNull Tick target) {
+    return audioUtil.getTick(sequence, target);
   }
 
   public interface MetronomeListener {
@@ -527,27 +568,4 @@ public class MetronomeUtil {
     @Override
     public void onPermissionMissing() {}
   }
-
-  public static class Tick {
-    public final long index;
-    public final int beat, subdivision;
-    @NonNull
-    public final String type;
-
-    public Tick(long index, int beat, int subdivision, @NonNull String type) {
-      this.index = index;
-      this.beat = beat;
-      this.subdivision = subdivision;
-      this.type = type;
-    }
-
-    @NonNull
-    @Override
-    public String toString() {
-      return "Tick{index = " + index +
-          ", beat=" + beat +
-          ", sub=" + subdivision +
-          ", type=" + type + '}';
-    }
-  }
-}
\ No newline at end of file
+}
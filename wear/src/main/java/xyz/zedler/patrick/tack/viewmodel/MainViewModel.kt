@@ -27,9 +27,9 @@ import xyz.zedler.patrick.tack.Constants.Def
 import xyz.zedler.patrick.tack.Constants.TEMPO_MAX
 import xyz.zedler.patrick.tack.Constants.TEMPO_MIN
 import xyz.zedler.patrick.tack.Constants.TickType
+import xyz.zedler.patrick.tack.core.Tick
 import xyz.zedler.patrick.tack.presentation.navigation.Screen
 import xyz.zedler.patrick.tack.util.MetronomeUtil
-import xyz.zedler.patrick.tack.util.MetronomeUtil.Tick
 import xyz.zedler.patrick.tack.util.TempoTapUtil
 
 class MainViewModel(